@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Clock of page flip animation
+ * <p>
+ * Animation is sampled with the time given by clock. Render should prefer
+ * passing the presentation time of frame, for example, the vsync time from
+ * {@link android.view.Choreographer}, to {@link PageFlip#animating(long)},
+ * so that a late frame is drawn at its real position instead of stuttering.
+ * The clock is only used when no frame time is given, it can be replaced by
+ * a fake one to drive animation deterministically in tests.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public interface AnimationClock {
+
+    /**
+     * Clock with monotonic system time
+     */
+    AnimationClock SYSTEM = new AnimationClock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * Get current time
+     *
+     * @return time in nanoseconds, it must be monotonic
+     */
+    long nanoTime();
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.view.animation.Interpolator;
+
+/**
+ * Scroller of touch point for page flip animation
+ * <p>
+ * Unlike {@link android.widget.Scroller} which reads wall clock when it is
+ * computed, the scroller is sampled with given frame time, its position only
+ * depends on frame time and is independent of frame rate. Animation starts at
+ * the first sampled frame instead of the time it is scheduled, so the first
+ * frame never jumps even if it is delayed.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class FlipScroller {
+
+    private final static long NANOS_PER_MS = 1000000L;
+    private final static long UNSTARTED = -1;
+
+    private float mStartX;
+    private float mStartY;
+    private float mDeltaX;
+    private float mDeltaY;
+    private float mCurrX;
+    private float mCurrY;
+    private long mDurationNanos;
+    // frame time of the first sampled frame
+    private long mStartTime;
+    private boolean mIsFinished;
+    private Interpolator mInterpolator;
+
+    FlipScroller() {
+        mIsFinished = true;
+        mStartTime = UNSTARTED;
+        mInterpolator = new ViscousFluidInterpolator();
+    }
+
+    /**
+     * Set easing curve of animation
+     *
+     * @param interpolator easing curve, null means the default viscous fluid
+     *                     curve which is same with {@link android.widget.Scroller}
+     */
+    void setInterpolator(Interpolator interpolator) {
+        mInterpolator = interpolator != null ?
+                        interpolator : new ViscousFluidInterpolator();
+    }
+
+    /**
+     * Start scrolling
+     *
+     * @param startX start x
+     * @param startY start y
+     * @param dx distance of x
+     * @param dy distance of y
+     * @param duration duration in milliseconds
+     */
+    void startScroll(float startX, float startY, float dx, float dy,
+                     int duration) {
+        mStartX = startX;
+        mStartY = startY;
+        mDeltaX = dx;
+        mDeltaY = dy;
+        mCurrX = startX;
+        mCurrY = startY;
+        mDurationNanos = Math.max(0, duration) * NANOS_PER_MS;
+        mStartTime = UNSTARTED;
+        mIsFinished = false;
+    }
+
+    /**
+     * Compute position at given frame time
+     * <p>Scroller is finished after the position of end time is computed
+     * </p>
+     *
+     * @param frameTimeNanos frame time in nanoseconds
+     * @return false if scroller was already finished
+     */
+    boolean computeScrollOffset(long frameTimeNanos) {
+        if (mIsFinished) {
+            return false;
+        }
+
+        // the first frame is the start of animation
+        if (mStartTime == UNSTARTED) {
+            mStartTime = frameTimeNanos;
+        }
+
+        final long elapsed = frameTimeNanos - mStartTime;
+        if (elapsed >= mDurationNanos) {
+            mCurrX = mStartX + mDeltaX;
+            mCurrY = mStartY + mDeltaY;
+            mIsFinished = true;
+        }
+        else {
+            final float t = mInterpolator.getInterpolation(
+                                Math.max(0, elapsed) / (float)mDurationNanos);
+            mCurrX = mStartX + mDeltaX * t;
+            mCurrY = mStartY + mDeltaY * t;
+        }
+        return true;
+    }
+
+    /**
+     * Abort animation and stay at the current position
+     */
+    void abortAnimation() {
+        mIsFinished = true;
+    }
+
+    boolean isFinished() {
+        return mIsFinished;
+    }
+
+    float getCurrX() {
+        return mCurrX;
+    }
+
+    float getCurrY() {
+        return mCurrY;
+    }
+
+    /**
+     * Viscous fluid easing curve used by {@link android.widget.Scroller}
+     */
+    final static class ViscousFluidInterpolator implements Interpolator {
+
+        // controls the viscous fluid effect (how much of it)
+        private final static float VISCOUS_FLUID_SCALE = 8.0f;
+        private final static float VISCOUS_FLUID_NORMALIZE;
+        private final static float VISCOUS_FLUID_OFFSET;
+
+        static {
+            // must be set to 1.0 (used in viscousFluid())
+            VISCOUS_FLUID_NORMALIZE = 1.0f / viscousFluid(1.0f, 1.0f);
+            // account for very small floating-point error
+            VISCOUS_FLUID_OFFSET = 1.0f - VISCOUS_FLUID_NORMALIZE *
+                                          viscousFluid(1.0f, 1.0f);
+        }
+
+        private static float viscousFluid(float x, float normalize) {
+            x *= VISCOUS_FLUID_SCALE;
+            if (x < 1.0f) {
+                x -= (1.0f - (float)Math.exp(-x));
+            }
+            else {
+                float start = 0.36787944117f;   // 1/e == exp(-1)
+                x = 1.0f - (float)Math.exp(1.0f - x);
+                x = start + x * (1.0f - start);
+            }
+            return x * normalize;
+        }
+
+        @Override
+        public float getInterpolation(float input) {
+            float interpolated = viscousFluid(input, VISCOUS_FLUID_NORMALIZE);
+            if (interpolated > 0) {
+                return interpolated + VISCOUS_FLUID_OFFSET;
+            }
+            return interpolated;
+        }
+    }
+}
@@ -35,13 +35,34 @@ public class FoldBackVertexProgram extends VertexProgram {
     final static String VAR_MASK_COLOR     = "u_maskColor";
     final static String VAR_SHADOW_TEXTURE = "u_shadow";
 
+    // program variants
+    // masked variant mixes mask color on back of fold page in single page mode
+    final static int VARIANT_MASKED   = 0;
+    // unmasked variant is used in double pages mode or if mask alpha is 0
+    final static int VARIANT_UNMASKED = 1;
+    // macro to enable mask color in shader script
+    private final static String DEFINE_MASK_COLOR = "MASK_COLOR";
+
+    private final int mVariant;
     int mShadowLoc;
     int mMaskColorLoc;
     int mTexXOffsetLoc;
 
     public FoldBackVertexProgram() {
-        super();
+        this(VARIANT_MASKED, TEXTURE_PLAIN);
+    }
 
+    /**
+     * Constructor
+     *
+     * @param variant program variant: {@link #VARIANT_MASKED} or
+     *                {@link #VARIANT_UNMASKED}
+     * @param textureVariant texture variant, see {@link VertexProgram}
+     */
+    public FoldBackVertexProgram(int variant, int textureVariant) {
+        super(textureVariant);
+
+        mVariant = variant;
         mShadowLoc = INVALID_GL_HANDLE;
         mMaskColorLoc = INVALID_GL_HANDLE;
         mTexXOffsetLoc = INVALID_GL_HANDLE;
@@ -56,12 +77,30 @@ public class FoldBackVertexProgram extends VertexProgram {
      */
     public FoldBackVertexProgram init(Context context) throws
                                                        PageFlipException {
-        super.init(context,
-                   R.raw.fold_back_vertex_shader,
-                   R.raw.fold_back_fragment_shader);
+        if (mVariant == VARIANT_MASKED) {
+            super.init(context,
+                       R.raw.fold_back_vertex_shader,
+                       R.raw.fold_back_fragment_shader,
+                       getDefines(DEFINE_MASK_COLOR));
+        }
+        else {
+            super.init(context,
+                       R.raw.fold_back_vertex_shader,
+                       R.raw.fold_back_fragment_shader,
+                       getDefines());
+        }
         return this;
     }
 
+    /**
+     * Does program mix mask color on back of fold page?
+     *
+     * @return true if it is masked variant
+     */
+    boolean isMasked() {
+        return mVariant == VARIANT_MASKED;
+    }
+
     /**
      * Get variable handles defined in shader script
      */
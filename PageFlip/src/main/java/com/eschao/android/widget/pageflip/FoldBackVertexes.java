@@ -24,7 +24,6 @@ import static android.opengl.GLES20.glBindTexture;
 import static android.opengl.GLES20.glUniform1f;
 import static android.opengl.GLES20.glUniform1i;
 import static android.opengl.GLES20.glUniform4f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
 
 /**
  * Vertex buffer management for back of fold page
@@ -84,24 +83,35 @@ final class FoldBackVertexes extends Vertexes {
         mMaskAlpha = alpha;
     }
 
+    /**
+     * Is back of fold page masked?
+     * <p>Only single page mode masks back of fold page, the back is next page
+     * content in double pages mode</p>
+     *
+     * @param hasSecondPage there has second page or not
+     * @return true if mask color should be mixed
+     */
+    public boolean isMasked(boolean hasSecondPage) {
+        return !hasSecondPage && mMaskAlpha > 0;
+    }
+
     /**
      * Draw fold back and shadow
      *
-     * @param program fold back vertex program
+     * @param programs variants of fold back vertex program, they should be
+     *                 masked variants if {@link #isMasked(boolean)} is true
      * @param page the current operating page: First Page
      * @param hasSecondPage there has second page or not
      * @param gradientShadowId gradient shadow id
      */
-    public void draw(FoldBackVertexProgram program,
+    public void draw(VertexProgramVariants programs,
                      Page page,
                      boolean hasSecondPage,
                      int gradientShadowId) {
-        glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false,
-                           VertexProgram.MVPMatrix, 0);
-
-        // load fold back texture
-        glBindTexture(GL_TEXTURE_2D, page.getBackTextureID());
-        glUniform1i(program.mTextureLoc, 0);
+        // load fold back texture and background layer if it is an overlay,
+        // texture variant of program is used by page
+        final FoldBackVertexProgram program =
+                (FoldBackVertexProgram)page.bindBackTexture(programs);
 
         // load gradient shadow texture
         glActiveTexture(GLES20.GL_TEXTURE1);
@@ -114,15 +124,19 @@ final class FoldBackVertexes extends Vertexes {
         // double page mode, the back texture is different with the first one,
         // it is the next page content texture and should be drawn in the same
         // order with the first texture, so the value is set 1. For computing
-        // details, please see the shader script.
-        glUniform1f(program.mTexXOffsetLoc, hasSecondPage ? 1.0f : 0);
-
-        // set mask color and alpha
-        glUniform4f(program.mMaskColorLoc,
-                    page.maskColor[0][0],
-                    page.maskColor[0][1],
-                    page.maskColor[0][2],
-                    hasSecondPage ? 0 : mMaskAlpha);
+        // details, please see the shader script. If texture is rotated, the
+        // mirror has been done when rotating texture coordinates.
+        glUniform1f(program.mTexXOffsetLoc,
+                    hasSecondPage && !page.isTextureRotated() ? 1.0f : 0);
+
+        // set mask color and alpha, unmasked variant has no mask color
+        if (program.isMasked()) {
+            glUniform4f(program.mMaskColorLoc,
+                        page.maskColor[0][0],
+                        page.maskColor[0][1],
+                        page.maskColor[0][2],
+                        hasSecondPage ? 0 : mMaskAlpha);
+        }
 
         // draw triangles
         drawWith(GL_TRIANGLE_STRIP,
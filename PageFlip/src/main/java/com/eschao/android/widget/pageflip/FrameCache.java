@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static android.opengl.GLES20.GL_CLAMP_TO_EDGE;
+import static android.opengl.GLES20.GL_COLOR_ATTACHMENT0;
+import static android.opengl.GLES20.GL_FLOAT;
+import static android.opengl.GLES20.GL_FRAMEBUFFER;
+import static android.opengl.GLES20.GL_FRAMEBUFFER_COMPLETE;
+import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_WRAP_S;
+import static android.opengl.GLES20.GL_TEXTURE_WRAP_T;
+import static android.opengl.GLES20.GL_TRIANGLE_FAN;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.glActiveTexture;
+import static android.opengl.GLES20.glBindFramebuffer;
+import static android.opengl.GLES20.glBindTexture;
+import static android.opengl.GLES20.glCheckFramebufferStatus;
+import static android.opengl.GLES20.glDeleteFramebuffers;
+import static android.opengl.GLES20.glDeleteTextures;
+import static android.opengl.GLES20.glDrawArrays;
+import static android.opengl.GLES20.glEnableVertexAttribArray;
+import static android.opengl.GLES20.glFramebufferTexture2D;
+import static android.opengl.GLES20.glGenFramebuffers;
+import static android.opengl.GLES20.glGenTextures;
+import static android.opengl.GLES20.glTexImage2D;
+import static android.opengl.GLES20.glTexParameterf;
+import static android.opengl.GLES20.glUniform1i;
+import static android.opengl.GLES20.glVertexAttribPointer;
+
+/**
+ * Cache of static page frame
+ * <p>
+ * A static frame only contains full pages and it is the same as long as
+ * page textures are not changed. The cache renders it once to a texture
+ * attached to a framebuffer object, and redraws the frame with one quad
+ * until content of any page is changed, instead of compositing every page
+ * again.
+ * </p>
+ * <p>
+ * The cache takes a texture of surface size, it belongs to the EGL context
+ * which creates it and all methods should be called in OpenGL thread. The
+ * texture is accounted in {@link TextureManager} as a pinned one.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class FrameCache {
+
+    private final static String TAG = "FrameCache";
+    private final static int INVALID_ID = -1;
+
+    private int mFramebufferID;
+    private int mTextureID;
+    private int mWidth;
+    private int mHeight;
+    // bytes of texture accounted in TextureManager
+    private long mBytes;
+
+    // pages and their content versions of cached frame
+    private boolean mIsValid;
+    private Page mFirstPage;
+    private Page mSecondPage;
+    private int mFirstVersion;
+    private int mSecondVersion;
+
+    // vertexes and texture coordinates of full screen quad
+    private final FloatBuffer mVexBuf;
+    private final FloatBuffer mTexCoordsBuf;
+
+    FrameCache() {
+        mFramebufferID = INVALID_ID;
+        mTextureID = INVALID_ID;
+        mWidth = 0;
+        mHeight = 0;
+        mBytes = 0;
+        mIsValid = false;
+        mVexBuf = ByteBuffer.allocateDirect(48)
+                            .order(ByteOrder.nativeOrder())
+                            .asFloatBuffer();
+        mTexCoordsBuf = ByteBuffer.allocateDirect(32)
+                                  .order(ByteOrder.nativeOrder())
+                                  .asFloatBuffer();
+
+        // framebuffer texture has origin at bottom-left corner
+        mTexCoordsBuf.put(new float[] {1, 0, 1, 1, 0, 1, 0, 0}).position(0);
+    }
+
+    /**
+     * Is cached frame same with the frame of given pages?
+     *
+     * @param first the first page
+     * @param second the second page, could be null
+     * @return true if cached frame can be drawn directly
+     */
+    boolean isValid(Page first, Page second) {
+        return mIsValid &&
+               mFirstPage == first &&
+               mFirstVersion == first.getContentVersion() &&
+               mSecondPage == second &&
+               (second == null ||
+                mSecondVersion == second.getContentVersion());
+    }
+
+    /**
+     * Invalidate cached frame
+     */
+    void invalidate() {
+        mIsValid = false;
+        mFirstPage = null;
+        mSecondPage = null;
+    }
+
+    /**
+     * Begin to render frame into cache
+     * <p>Framebuffer and texture are created or resized with view size</p>
+     *
+     * @param viewRect view rect
+     * @return false if framebuffer can't be created, cache should not be
+     *         used any more
+     */
+    boolean begin(GLViewRect viewRect) {
+        final int width = (int)viewRect.surfaceW;
+        final int height = (int)viewRect.surfaceH;
+        mIsValid = false;
+
+        // 1. create framebuffer and texture
+        if (mFramebufferID == INVALID_ID) {
+            int[] ids = new int[1];
+            glGenFramebuffers(1, ids, 0);
+            mFramebufferID = ids[0];
+            glGenTextures(1, ids, 0);
+            mTextureID = ids[0];
+            mWidth = 0;
+            mHeight = 0;
+        }
+
+        // 2. allocate texture storage with view size, the old storage is
+        // replaced, make room for the new one in texture budget
+        if (mWidth != width || mHeight != height) {
+            final TextureManager manager = TextureManager.get();
+            final long bytes = (long)width * height * 4;
+            manager.onPinnedChanged(-mBytes);
+            manager.reserve(bytes, null, -1);
+            manager.onPinnedChanged(bytes);
+            mBytes = bytes;
+            mWidth = width;
+            mHeight = height;
+            glActiveTexture(GL_TEXTURE0);
+            glBindTexture(GL_TEXTURE_2D, mTextureID);
+            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S,
+                            GL_CLAMP_TO_EDGE);
+            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T,
+                            GL_CLAMP_TO_EDGE);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0,
+                         GL_RGBA, GL_UNSIGNED_BYTE, null);
+
+            glBindFramebuffer(GL_FRAMEBUFFER, mFramebufferID);
+            glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0,
+                                   GL_TEXTURE_2D, mTextureID, 0);
+        }
+        else {
+            glBindFramebuffer(GL_FRAMEBUFFER, mFramebufferID);
+        }
+
+        // 3. build quad of the whole surface
+        final float w = viewRect.halfW;
+        final float h = viewRect.halfH;
+        mVexBuf.put(new float[] {w, -h, 0, w, h, 0, -w, h, 0, -w, -h, 0})
+               .position(0);
+
+        // 4. check if framebuffer can be rendered
+        final int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            Log.w(TAG, "Framebuffer is not complete: " + status);
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * End rendering frame into cache
+     *
+     * @param first the first page rendered in cache
+     * @param second the second page rendered in cache, could be null
+     */
+    void end(Page first, Page second) {
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        mFirstPage = first;
+        mFirstVersion = first.getContentVersion();
+        mSecondPage = second;
+        mSecondVersion = second != null ? second.getContentVersion() : 0;
+        mIsValid = true;
+    }
+
+    /**
+     * Draw cached frame with a full screen quad
+     * <p>Plain variant of program should be used and its matrix should be
+     * set before calling</p>
+     *
+     * @param program vertex shader program
+     */
+    void draw(VertexProgram program) {
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, mTextureID);
+        glUniform1i(program.mTextureLoc, 0);
+
+        glVertexAttribPointer(program.mVertexPosLoc, 3, GL_FLOAT, false, 0,
+                              mVexBuf);
+        glEnableVertexAttribArray(program.mVertexPosLoc);
+        glVertexAttribPointer(program.mTexCoordLoc, 2, GL_FLOAT, false, 0,
+                              mTexCoordsBuf);
+        glEnableVertexAttribArray(program.mTexCoordLoc);
+        glDrawArrays(GL_TRIANGLE_FAN, 0, 4);
+    }
+
+    /**
+     * Delete framebuffer and texture
+     */
+    void delete() {
+        if (mFramebufferID != INVALID_ID) {
+            glDeleteFramebuffers(1, new int[] {mFramebufferID}, 0);
+            glDeleteTextures(1, new int[] {mTextureID}, 0);
+            mFramebufferID = INVALID_ID;
+            mTextureID = INVALID_ID;
+        }
+
+        forget();
+    }
+
+    /**
+     * Forget framebuffer and texture without deleting them
+     * <p>It is used after EGL context is lost, ids could belong to objects of
+     * the current context. Bytes of texture are released in TextureManager
+     * </p>
+     */
+    void forget() {
+        TextureManager.get().onPinnedChanged(-mBytes);
+        mBytes = 0;
+        mFramebufferID = INVALID_ID;
+        mTextureID = INVALID_ID;
+        mWidth = 0;
+        mHeight = 0;
+        invalidate();
+    }
+}
@@ -17,6 +17,10 @@ package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import static android.opengl.GLES20.GL_FRAGMENT_SHADER;
 import static android.opengl.GLES20.GL_LINK_STATUS;
 import static android.opengl.GLES20.GL_VERTEX_SHADER;
@@ -55,37 +59,54 @@ public class GLProgram {
 
     /**
      * Initiate with given vertex shader and fragment shader
+     * <p>Given macros are defined at the beginning of both scripts to compile
+     * a variant of program, scripts can use #ifdef to strip unused codes.
+     * Program is loaded from {@link ProgramBinaryCache} if there is a valid
+     * cached binary, otherwise, shader scripts are compiled and linked, and
+     * the linked binary is saved to cache for next time</p>
      *
      * @param context android context
      * @param vertexResId vertex shader script id
      * @param fragmentResId fragment shader script id
+     * @param defines macro names to be defined for a program variant
      * @return self
      * @throws PageFlipException if fail to read or compile shader scripts
      */
-    public GLProgram init(Context context, int vertexResId, int fragmentResId)
-                                                    throws PageFlipException {
-        // 1. init shader
+    public GLProgram init(Context context, int vertexResId, int fragmentResId,
+                          String... defines) throws PageFlipException {
+        // 1. read shader scripts and try to load cached program binary
+        // defines are part of scripts, so every variant has its own binary
+        final String header = getDefinesHeader(defines);
+        final String vertexCodes = header + mVertex.readGLSLFromResource(
+                                                    context, vertexResId);
+        final String fragmentCodes = header + mFragment.readGLSLFromResource(
+                                                    context, fragmentResId);
+        final String key = getBinaryKey(vertexCodes, fragmentCodes);
+        mProgramRef = glCreateProgram();
+        if (mProgramRef == 0) {
+            throw new PageFlipException("Can't create texture program");
+        }
+
+        if (ProgramBinaryCache.load(context, key, mProgramRef)) {
+            glUseProgram(mProgramRef);
+            getVarsLocation();
+            return this;
+        }
+
+        // 2. init shader
         try {
-            mVertex.compile(context, GL_VERTEX_SHADER, vertexResId);
-            mFragment.compile(context, GL_FRAGMENT_SHADER, fragmentResId);
+            mVertex.compile(GL_VERTEX_SHADER, vertexCodes);
+            mFragment.compile(GL_FRAGMENT_SHADER, fragmentCodes);
         }
         catch (PageFlipException e) {
-            mVertex.delete();
-            mFragment.delete();
+            delete();
             throw e;
         }
 
-        // 2. create texture program and link shader
-        mProgramRef = glCreateProgram();
-        if (mProgramRef == 0) {
-            mVertex.delete();
-            mFragment.delete();
-            throw new PageFlipException("Can't create texture program");
-        }
-
         // 3. attach vertex and fragment shader
         glAttachShader(mProgramRef, mVertex.getShaderRef());
         glAttachShader(mProgramRef, mFragment.getShaderRef());
+        ProgramBinaryCache.prepareLink(mProgramRef);
         glLinkProgram(mProgramRef);
 
         // 4. check shader link status
@@ -95,6 +116,7 @@ public class GLProgram {
             delete();
             throw new PageFlipException("Can't link program");
         }
+        ProgramBinaryCache.save(context, key, mProgramRef);
 
         // 5. get all variable handles defined in scripts
         // subclass should implement getVarsLocation to be responsible for its
@@ -126,6 +148,58 @@ public class GLProgram {
         return mProgramRef;
     }
 
+    /**
+     * Get #define lines of given macro names
+     *
+     * @param defines macro names
+     * @return #define lines
+     */
+    private String getDefinesHeader(String[] defines) {
+        if (defines == null || defines.length == 0) {
+            return "";
+        }
+
+        StringBuilder s = new StringBuilder();
+        for (String define : defines) {
+            s.append("#define ").append(define).append("\n");
+        }
+        return s.toString();
+    }
+
+    /**
+     * Get key of program binary cache
+     * <p>Key is SHA-1 digest of shader scripts with their defines, so an
+     * outdated binary or a binary of other variant won't be loaded. A weak
+     * hash could give two scripts the same key and a wrong binary which is
+     * linked successfully would be loaded silently</p>
+     *
+     * @param vertexCodes vertex shader script
+     * @param fragmentCodes fragment shader script
+     * @return binary key which can be used as file name
+     * @throws PageFlipException if SHA-1 is not supported
+     */
+    private String getBinaryKey(String vertexCodes, String fragmentCodes)
+            throws PageFlipException {
+        try {
+            final Charset utf8 = Charset.forName("UTF-8");
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(vertexCodes.getBytes(utf8));
+            // separate scripts to not match when codes move between them
+            digest.update((byte)0);
+            digest.update(fragmentCodes.getBytes(utf8));
+
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest.digest()) {
+                key.append(Character.forDigit((b >> 4) & 0xF, 16))
+                   .append(Character.forDigit(b & 0xF, 16));
+            }
+            return key.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new PageFlipException("SHA-1 is not supported", e);
+        }
+    }
+
     /**
      * Subclass should implement it to get its own variable handles which are
      * defined in its shader scripts
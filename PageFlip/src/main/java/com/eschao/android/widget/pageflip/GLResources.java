@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.opengl.GLUtils;
+
+import java.util.HashMap;
+
+import javax.microedition.khronos.egl.EGL10;
+import javax.microedition.khronos.egl.EGLContext;
+
+import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE_2D;
+import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
+import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.glActiveTexture;
+import static android.opengl.GLES20.glBindTexture;
+import static android.opengl.GLES20.glDeleteTextures;
+import static android.opengl.GLES20.glGenTextures;
+import static android.opengl.GLES20.glIsProgram;
+import static android.opengl.GLES20.glIsTexture;
+import static android.opengl.GLES20.glTexParameterf;
+
+/**
+ * Shared OpenGL resources of {@link PageFlip} instances
+ * <p>
+ * Shader programs and gradient shadow texture are same for all PageFlip
+ * instances, they are created once for every EGL context and shared by all
+ * instances rendering in the same context. Resources are reference counted,
+ * the last instance releasing them will delete them.
+ * </p>
+ * <p>
+ * All GL objects are gone with their EGL context, so resources of a lost
+ * context are only dropped from registry without deleting GL handles which
+ * could belong to other objects of the current context. A new context could
+ * get the handle of a lost one which is still in registry, resources are
+ * checked before being reused and are created again if they don't exist in
+ * the current context.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class GLResources {
+
+    // resources of every EGL context
+    private final static HashMap<EGLContext, GLResources> sRegistry =
+            new HashMap<>();
+
+    // EGL context of resources
+    private final EGLContext mEGLContext;
+    private int mRefCount;
+
+    // shared shader programs, every one has variants of texture kinds
+    final VertexProgramVariants mVertexPrograms;
+    final VertexProgramVariants mFoldBackPrograms;
+    final VertexProgramVariants mUnmaskedFoldBackPrograms;
+    final ShadowVertexProgram mShadowVertexProgram;
+    // debug program of overdraw counter, it is created when it is used
+    private OverdrawProgram mOverdrawProgram;
+
+    // shared gradient shadow texture id
+    int mGradientShadowTextureID;
+
+    private GLResources(EGLContext eglContext) {
+        mEGLContext = eglContext;
+        mRefCount = 0;
+        mVertexPrograms = VertexProgramVariants.create();
+        mFoldBackPrograms = VertexProgramVariants.createFoldBack(
+                FoldBackVertexProgram.VARIANT_MASKED);
+        mUnmaskedFoldBackPrograms = VertexProgramVariants.createFoldBack(
+                FoldBackVertexProgram.VARIANT_UNMASKED);
+        mShadowVertexProgram = new ShadowVertexProgram();
+        mOverdrawProgram = null;
+        mGradientShadowTextureID = -1;
+    }
+
+    /**
+     * Acquire resources of current EGL context
+     * <p>Resources will be created if there are no ones for current context.
+     * It should be called in OpenGL thread and every acquired resources must
+     * be released by {@link #release()}</p>
+     *
+     * @param context Android context
+     * @return resources of current EGL context
+     * @throws PageFlipException if there is no current EGL context or fail to
+     *                           compile and link shader programs
+     */
+    static GLResources acquire(Context context) throws PageFlipException {
+        final EGLContext eglContext = getCurrentEGLContext();
+        if (eglContext == null) {
+            throw new PageFlipException("No current EGL context");
+        }
+
+        synchronized (sRegistry) {
+            GLResources res = sRegistry.get(eglContext);
+
+            // the entry belongs to a lost context whose handle is reused,
+            // drop it without deleting, its holders only release reference
+            if (res != null && !res.isValid()) {
+                sRegistry.remove(eglContext);
+                res = null;
+            }
+
+            if (res == null) {
+                res = new GLResources(eglContext);
+                res.create(context);
+                sRegistry.put(eglContext, res);
+            }
+
+            res.mRefCount++;
+            return res;
+        }
+    }
+
+    /**
+     * Release resources
+     * <p>GL handles are deleted if it is the last reference and resources
+     * belong to the current EGL context</p>
+     */
+    void release() {
+        synchronized (sRegistry) {
+            if (mRefCount <= 0 || --mRefCount > 0) {
+                return;
+            }
+
+            // resources dropped as stale ones don't own anything in registry
+            // or in the current context
+            if (sRegistry.get(mEGLContext) != this) {
+                return;
+            }
+
+            // a new context could have the handle of the lost one
+            sRegistry.remove(mEGLContext);
+            if (mEGLContext.equals(getCurrentEGLContext()) && isValid()) {
+                delete();
+            }
+        }
+    }
+
+    /**
+     * Get overdraw program of current EGL context
+     * <p>It is only used by debugging, so it is created at the first time
+     * instead of with other programs</p>
+     *
+     * @param context Android context
+     * @return overdraw program
+     * @throws PageFlipException if fail to compile and link shader program
+     */
+    OverdrawProgram getOverdrawProgram(Context context)
+            throws PageFlipException {
+        if (mOverdrawProgram == null) {
+            mOverdrawProgram = new OverdrawProgram().init(context);
+        }
+        return mOverdrawProgram;
+    }
+
+    /**
+     * Do resources exist in the current EGL context?
+     *
+     * @return false if resources are from a lost context with the same handle
+     */
+    private boolean isValid() {
+        return glIsProgram(mShadowVertexProgram.getProgramRef()) &&
+               glIsTexture(mGradientShadowTextureID);
+    }
+
+    /**
+     * Create shader programs and gradient shadow texture
+     *
+     * @param context Android context
+     * @throws PageFlipException if fail to compile and link shader programs
+     */
+    private void create(Context context) throws PageFlipException {
+        try {
+            // init shader programs
+            mVertexPrograms.init(context);
+            mFoldBackPrograms.init(context);
+            mUnmaskedFoldBackPrograms.init(context);
+            mShadowVertexProgram.init(context);
+
+            // create gradient shadow texture
+            createGradientShadowTexture();
+        }
+        catch (PageFlipException e) {
+            delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Delete all GL handles
+     */
+    private void delete() {
+        mVertexPrograms.delete();
+        mFoldBackPrograms.delete();
+        mUnmaskedFoldBackPrograms.delete();
+        mShadowVertexProgram.delete();
+        if (mOverdrawProgram != null) {
+            mOverdrawProgram.delete();
+            mOverdrawProgram = null;
+        }
+
+        if (mGradientShadowTextureID != -1) {
+            glDeleteTextures(1, new int[] {mGradientShadowTextureID}, 0);
+            mGradientShadowTextureID = -1;
+        }
+    }
+
+    /**
+     * Create gradient shadow texture for lighting effect
+     */
+    private void createGradientShadowTexture() {
+        int textureIDs[] = new int[1];
+        glGenTextures(1, textureIDs, 0);
+        glActiveTexture(GL_TEXTURE0);
+        mGradientShadowTextureID = textureIDs[0];
+
+        // gradient shadow texture
+        Bitmap shadow = PageFlipUtils.createGradientBitmap();
+        glBindTexture(GL_TEXTURE_2D, mGradientShadowTextureID);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        GLUtils.texImage2D(GL_TEXTURE_2D, 0, shadow, 0);
+        shadow.recycle();
+    }
+
+    /**
+     * Get EGL context of calling thread
+     *
+     * @return current EGL context or null if there is no one
+     */
+    private static EGLContext getCurrentEGLContext() {
+        EGLContext eglContext = ((EGL10)EGLContext.getEGL())
+                                    .eglGetCurrentContext();
+        if (eglContext == null || EGL10.EGL_NO_CONTEXT.equals(eglContext)) {
+            return null;
+        }
+        return eglContext;
+    }
+}
@@ -70,6 +70,18 @@ public class GLShader {
                                         + resId);
         }
 
+        return compile(type, codes);
+    }
+
+    /**
+     * Compile shader script
+     *
+     * @param type  GL_VERTEX_SHADER or GL_FRAGMENT_SHADER
+     * @param codes shader script
+     * @return self
+     * @throws PageFlipException if fail to compile shader script
+     */
+    public GLShader compile(int type, String codes) throws PageFlipException {
         // create a shader
         mShaderRef = glCreateShader(type);
         if (mShaderRef != INVALID_GL_HANDLE) {
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Listener for the end of page flip animation
+ * <p>
+ * It is called in the thread which steps animation by
+ * {@link PageFlip#animating()}. If animation is driven in OpenGL render loop,
+ * the listener is called in OpenGL thread before drawing the frame, so that
+ * textures and page number can be updated without posting to other threads.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public interface OnPageFlipEndedListener {
+
+    /**
+     * Page flip animation is ended
+     *
+     * @param state end state: {@link PageFlipState#END_WITH_FORWARD},
+     *              {@link PageFlipState#END_WITH_BACKWARD} or
+     *              {@link PageFlipState#END_WITH_RESTORE}
+     */
+    void onPageFlipEnded(PageFlipState state);
+}
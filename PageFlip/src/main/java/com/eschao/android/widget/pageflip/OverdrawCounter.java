@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static android.opengl.GLES20.GL_BLEND;
+import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
+import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
+import static android.opengl.GLES20.GL_ONE;
+import static android.opengl.GLES20.GL_RED_BITS;
+import static android.opengl.GLES20.GL_RGBA;
+import static android.opengl.GLES20.GL_UNSIGNED_BYTE;
+import static android.opengl.GLES20.glBlendFunc;
+import static android.opengl.GLES20.glClear;
+import static android.opengl.GLES20.glDisable;
+import static android.opengl.GLES20.glEnable;
+import static android.opengl.GLES20.glGetIntegerv;
+import static android.opengl.GLES20.glReadPixels;
+
+/**
+ * Counter of overdraw for debugging
+ * <p>
+ * Geometry of a frame is drawn with {@link OverdrawProgram} and additive
+ * blending, every fragment which passes depth test adds one level to red
+ * channel of its pixel. After drawing, red channel of every pixel is the
+ * number of times it is shaded. Fragments rejected by depth test are not
+ * counted since they are dropped before shading.
+ * </p>
+ * <p>
+ * Pixels are read back to count, it is slow and only for debugging. A pixel
+ * is counted at most 2^redBits - 1 times, that is 31 for RGB565 surface.
+ * All methods should be called in OpenGL thread.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class OverdrawCounter {
+
+    private int mWidth;
+    private int mHeight;
+    private ByteBuffer mPixels;
+    // maximum count of red channel
+    private int mMaxLevel;
+
+    // statistics of the last counted frame
+    private long mShadedFragments;
+    private long mCoveredPixels;
+
+    OverdrawCounter() {
+        mWidth = 0;
+        mHeight = 0;
+        mMaxLevel = 0;
+        mShadedFragments = 0;
+        mCoveredPixels = 0;
+    }
+
+    /**
+     * Begin to count overdraw of a frame
+     * <p>Frame is cleared and additive blending is enabled, geometry should
+     * be drawn with the returned color in red channel after calling</p>
+     *
+     * @param viewRect view rect
+     * @return red color of one level
+     */
+    float begin(GLViewRect viewRect) {
+        final int width = (int)viewRect.surfaceW;
+        final int height = (int)viewRect.surfaceH;
+        if (mWidth != width || mHeight != height) {
+            mWidth = width;
+            mHeight = height;
+            mPixels = ByteBuffer.allocateDirect(width * height * 4)
+                                .order(ByteOrder.nativeOrder());
+        }
+
+        if (mMaxLevel == 0) {
+            int[] bits = new int[1];
+            glGetIntegerv(GL_RED_BITS, bits, 0);
+            mMaxLevel = (1 << Math.max(1, Math.min(8, bits[0]))) - 1;
+        }
+
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        glEnable(GL_BLEND);
+        glBlendFunc(GL_ONE, GL_ONE);
+        return 1f / mMaxLevel;
+    }
+
+    /**
+     * End counting and read back counts of pixels
+     */
+    void end() {
+        glDisable(GL_BLEND);
+        mPixels.position(0);
+        glReadPixels(0, 0, mWidth, mHeight, GL_RGBA, GL_UNSIGNED_BYTE,
+                     mPixels);
+
+        long shaded = 0;
+        long covered = 0;
+        final int size = mWidth * mHeight * 4;
+        for (int i = 0; i < size; i += 4) {
+            final int level = Math.round((mPixels.get(i) & 0xFF) *
+                                         mMaxLevel / 255f);
+            if (level > 0) {
+                shaded += level;
+                covered++;
+            }
+        }
+
+        mShadedFragments = shaded;
+        mCoveredPixels = covered;
+    }
+
+    /**
+     * Get number of shaded fragments of the last counted frame
+     *
+     * @return number of shaded fragments
+     */
+    long getShadedFragments() {
+        return mShadedFragments;
+    }
+
+    /**
+     * Get number of pixels covered by geometry of the last counted frame
+     *
+     * @return number of covered pixels
+     */
+    long getCoveredPixels() {
+        return mCoveredPixels;
+    }
+}
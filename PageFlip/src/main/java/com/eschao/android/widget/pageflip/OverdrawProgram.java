@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.content.Context;
+
+import static android.opengl.GLES20.glGetAttribLocation;
+import static android.opengl.GLES20.glGetUniformLocation;
+
+/**
+ * Overdraw shader program which is used to load:
+ * <ul>
+ *     <li>overdraw_vertex_shader.glsl</li>
+ *     <li>overdraw_fragment_shader.glsl</li>
+ * </ul>
+ * <p>It draws any geometry with a flat color to count shaded fragments, see
+ * {@link OverdrawCounter}</p>
+ *
+ * @author eschao
+ */
+public class OverdrawProgram extends GLProgram {
+
+    // variable names defined in shader scripts
+    final static String VAR_MVP_MATRIX  = "u_MVPMatrix";
+    final static String VAR_VERTEX_Z    = "u_vexZ";
+    final static String VAR_IS_FIXED_Z  = "u_isFixedZ";
+    final static String VAR_COLOR       = "u_color";
+    final static String VAR_VERTEX_POS  = "a_vexPosition";
+
+    int mMVPMatrixLoc;
+    int mVertexZLoc;
+    int mIsFixedZLoc;
+    int mColorLoc;
+    int mVertexPosLoc;
+
+    /**
+     * Constructor
+     */
+    public OverdrawProgram() {
+        super();
+
+        mMVPMatrixLoc = INVALID_GL_HANDLE;
+        mVertexZLoc = INVALID_GL_HANDLE;
+        mIsFixedZLoc = INVALID_GL_HANDLE;
+        mColorLoc = INVALID_GL_HANDLE;
+        mVertexPosLoc = INVALID_GL_HANDLE;
+    }
+
+    /**
+     * Initiate shader program
+     *
+     * @param context android context
+     * @return self
+     * @throws PageFlipException raise exception if fail to compile & link
+     *                           program
+     */
+    public OverdrawProgram init(Context context) throws PageFlipException {
+        super.init(context,
+                   R.raw.overdraw_vertex_shader,
+                   R.raw.overdraw_fragment_shader);
+        return this;
+    }
+
+    /**
+     * Get variable handles from linked shader program
+     */
+    protected void getVarsLocation() {
+        if (mProgramRef != 0) {
+            mMVPMatrixLoc = glGetUniformLocation(mProgramRef, VAR_MVP_MATRIX);
+            mVertexZLoc = glGetUniformLocation(mProgramRef, VAR_VERTEX_Z);
+            mIsFixedZLoc = glGetUniformLocation(mProgramRef, VAR_IS_FIXED_Z);
+            mColorLoc = glGetUniformLocation(mProgramRef, VAR_COLOR);
+            mVertexPosLoc = glGetAttribLocation(mProgramRef, VAR_VERTEX_POS);
+        }
+    }
+
+    /**
+     * Delete shader resources
+     */
+    public void delete() {
+        super.delete();
+
+        mMVPMatrixLoc = INVALID_GL_HANDLE;
+        mVertexZLoc = INVALID_GL_HANDLE;
+        mIsFixedZLoc = INVALID_GL_HANDLE;
+        mColorLoc = INVALID_GL_HANDLE;
+        mVertexPosLoc = INVALID_GL_HANDLE;
+    }
+}
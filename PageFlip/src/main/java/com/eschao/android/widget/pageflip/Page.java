@@ -18,29 +18,37 @@ package com.eschao.android.widget.pageflip;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.graphics.RectF;
 import android.opengl.GLUtils;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static android.opengl.GLES20.GL_FLOAT;
 import static android.opengl.GLES20.GL_LINEAR;
+import static android.opengl.GLES20.GL_LINEAR_MIPMAP_LINEAR;
 import static android.opengl.GLES20.GL_TEXTURE0;
+import static android.opengl.GLES20.GL_TEXTURE2;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
 import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
 import static android.opengl.GLES20.GL_TRIANGLE_FAN;
 import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
+import static android.opengl.GLES20.GL_UNPACK_ALIGNMENT;
 import static android.opengl.GLES20.glActiveTexture;
 import static android.opengl.GLES20.glBindTexture;
 import static android.opengl.GLES20.glDeleteTextures;
 import static android.opengl.GLES20.glDrawArrays;
 import static android.opengl.GLES20.glEnableVertexAttribArray;
 import static android.opengl.GLES20.glGenTextures;
+import static android.opengl.GLES20.glGenerateMipmap;
+import static android.opengl.GLES20.glPixelStorei;
 import static android.opengl.GLES20.glTexParameterf;
 import static android.opengl.GLES20.glUniform1i;
-import static android.opengl.GLES20.glUniformMatrix4fv;
+import static android.opengl.GLES20.glUniform4f;
 import static android.opengl.GLES20.glVertexAttribPointer;
 
 /**
@@ -80,12 +88,21 @@ import static android.opengl.GLES20.glVertexAttribPointer;
 
 public class Page {
 
-    private final static int TEXTURE_SIZE = 3;
-    private final static int FIRST_TEXTURE_ID = 0;
-    private final static int SECOND_TEXTURE_ID = 1;
-    private final static int BACK_TEXTURE_ID = 2;
+    final static int TEXTURE_SIZE = 3;
+    public final static int FIRST_TEXTURE_ID = 0;
+    public final static int SECOND_TEXTURE_ID = 1;
+    public final static int BACK_TEXTURE_ID = 2;
     private final static int INVALID_TEXTURE_ID = -1;
 
+    // texture formats
+    // RGBA: 4 bytes per pixel, the default format
+    public final static int TEXTURE_FORMAT_RGBA = 0;
+    // RGB565: 2 bytes per pixel without alpha, for opaque pages
+    public final static int TEXTURE_FORMAT_RGB_565 = 1;
+    // luminance: 1 byte per pixel, colored with tint color when drawing, for
+    // black-and-white document pages
+    public final static int TEXTURE_FORMAT_LUMINANCE = 2;
+
     /**
      * <p>
      * 4 apexes of page has different permutation order according to original
@@ -216,6 +233,52 @@ public class Page {
     private int mUnusedTexSize;
     private boolean mFirstBitmapLoading;
     private boolean mSecondaryBitmapLoading;
+    // are textures rotated 90 degree clockwise when they are drawn on page?
+    private boolean mIsTexRotated;
+    // is texture(front, back and second) an overlay on background layer?
+    private boolean[] mIsOverlay;
+    // rect of overlay(front, back and second) in page texture space:
+    // [left, top, 1/width, 1/height]
+    private float[][] mOverlayRects;
+    // background layer texture id shared by pages, not owned by page
+    private int mBackgroundTexID;
+    // average color of background layer, used as mask color of overlay
+    private int mBackgroundColor;
+    // bytes of textures(front, back and second) accounted in TextureManager
+    private long[] mTexBytes;
+    // drawn sequence number of textures, for evicting the least recently
+    // drawn one
+    private long[] mTexDrawnSeq;
+    // bits of textures which are drawn in the current or last frame
+    private int mDrawnMask;
+    // bytes of unused textures which are not deleted yet
+    private long mUnusedBytes;
+    // OpenGL thread which uploads textures
+    private Thread mGLThread;
+    // default format of new textures
+    private int mTextureFormat;
+    // formats of textures(front, back and second)
+    private int[] mTexFormats;
+    // tint color of luminance textures
+    private int mTintColor;
+    // downscale bitmap to on-screen page size before uploading?
+    private boolean mIsDownscaleEnabled;
+    // generate mipmaps for textures?
+    private boolean mIsMipmapEnabled;
+    // scale from bitmap to uploaded texture(front, back and second)
+    private float[] mTexScales;
+    // pixel size of uploaded texture(front, back and second)
+    private int[] mTexWidths;
+    private int[] mTexHeights;
+    // does texture(front, back and second) have mipmaps?
+    private boolean[] mIsTexMipmapped;
+
+    // sequence of content versions shared by all pages
+    private final static AtomicInteger sContentVersionSeq =
+            new AtomicInteger(0);
+    // version of page content, it is changed whenever page will be drawn
+    // differently, for example: texture is set or moved
+    private int mContentVersion;
 
     /**
      * Constructor
@@ -242,6 +305,7 @@ public class Page {
         texHeight = height;
         mFrontVertexSize = 0;
         mApexOrderIndex = 0;
+        mIsTexRotated = false;
 
         mXFoldP = new GLPoint();
         mYFoldP = new GLPoint();
@@ -259,9 +323,49 @@ public class Page {
         mUnusedTexIDs = new int[] {INVALID_TEXTURE_ID,
                                    INVALID_TEXTURE_ID,
                                    INVALID_TEXTURE_ID};
+        mIsOverlay = new boolean[] {false, false, false};
+        mOverlayRects = new float[][] {new float[] {0, 0, 1, 1},
+                                       new float[] {0, 0, 1, 1},
+                                       new float[] {0, 0, 1, 1}};
+        mBackgroundTexID = INVALID_TEXTURE_ID;
+        mBackgroundColor = Color.WHITE;
+        mTexBytes = new long[] {0, 0, 0};
+        mTexDrawnSeq = new long[] {0, 0, 0};
+        mDrawnMask = 0;
+        mUnusedBytes = 0;
+        mGLThread = null;
+        mTextureFormat = TEXTURE_FORMAT_RGBA;
+        mTexFormats = new int[] {TEXTURE_FORMAT_RGBA,
+                                 TEXTURE_FORMAT_RGBA,
+                                 TEXTURE_FORMAT_RGBA};
+        mTintColor = Color.WHITE;
+        mIsDownscaleEnabled = false;
+        mIsMipmapEnabled = false;
+        mTexScales = new float[] {1, 1, 1};
+        mTexWidths = new int[] {0, 0, 0};
+        mTexHeights = new int[] {0, 0, 0};
+        mIsTexMipmapped = new boolean[] {false, false, false};
 
         createVertexesBuffer();
         buildVertexesOfFullPage();
+        markContentChanged();
+    }
+
+    /**
+     * Get version of page content
+     * <p>Two equal versions of the same page mean page is not changed</p>
+     *
+     * @return version of page content
+     */
+    int getContentVersion() {
+        return mContentVersion;
+    }
+
+    /**
+     * Mark page content is changed
+     */
+    private void markContentChanged() {
+        mContentVersion = sContentVersionSeq.incrementAndGet();
     }
 
     /**
@@ -302,6 +406,36 @@ public class Page {
         return height;
     }
 
+    /**
+     * Set textures are rotated 90 degree clockwise when they are drawn
+     * <p>
+     * It is useful to show portrait bitmaps in a landscape page without
+     * rotating and copying them. The caller should set textures with bitmaps
+     * whose width and height are inverted against the page, the rotation is
+     * done by texture coordinates when page is drawing.
+     * </p>
+     *
+     * @param isRotated true if textures are rotated
+     * @return self
+     */
+    public Page setTextureRotated(boolean isRotated) {
+        if (mIsTexRotated != isRotated) {
+            mIsTexRotated = isRotated;
+            buildVertexesOfFullPage();
+            markContentChanged();
+        }
+        return this;
+    }
+
+    /**
+     * Are textures rotated 90 degree clockwise when they are drawn?
+     *
+     * @return true if textures are rotated
+     */
+    public boolean isTextureRotated() {
+        return mIsTexRotated;
+    }
+
     /**
      * Is the first texture set?
      *
@@ -320,10 +454,23 @@ public class Page {
         return mTexIDs[SECOND_TEXTURE_ID] != INVALID_TEXTURE_ID;
     }
 
+    /**
+     * Is the first texture set with a temporary bitmap?
+     * <p>It is true when the first texture is set with a placeholder or
+     * preview bitmap and should be replaced once the full bitmap is loaded
+     * </p>
+     *
+     * @return true if the first texture is still loading
+     */
     public boolean isFirstBitmapLoading() {
         return mFirstBitmapLoading;
     }
 
+    /**
+     * Is the second texture set with a temporary bitmap?
+     *
+     * @return true if the second texture is still loading
+     */
     public boolean isSecondaryBitmapLoading() {
         return mSecondaryBitmapLoading;
     }
@@ -345,6 +492,10 @@ public class Page {
         if (mUnusedTexSize > 0) {
             glDeleteTextures(mUnusedTexSize, mUnusedTexIDs, 0);
             mUnusedTexSize = 0;
+
+            final long bytes = mUnusedBytes;
+            mUnusedBytes = 0;
+            TextureManager.get().onReleased(this, bytes, hasTextures());
         }
     }
 
@@ -356,15 +507,14 @@ public class Page {
      * @return self
      */
     public Page setFirstTextureWithSecond() {
-        if (mTexIDs[FIRST_TEXTURE_ID] > INVALID_TEXTURE_ID) {
-            mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[FIRST_TEXTURE_ID];
-        }
+        discardTexture(FIRST_TEXTURE_ID);
 
         maskColor[FIRST_TEXTURE_ID][0] = maskColor[SECOND_TEXTURE_ID][0];
         maskColor[FIRST_TEXTURE_ID][1] = maskColor[SECOND_TEXTURE_ID][1];
         maskColor[FIRST_TEXTURE_ID][2] = maskColor[SECOND_TEXTURE_ID][2];
-        mTexIDs[FIRST_TEXTURE_ID] = mTexIDs[SECOND_TEXTURE_ID];
-        mTexIDs[SECOND_TEXTURE_ID] = INVALID_TEXTURE_ID;
+        moveTexture(this, SECOND_TEXTURE_ID, FIRST_TEXTURE_ID);
+        mFirstBitmapLoading = mSecondaryBitmapLoading;
+        mSecondaryBitmapLoading = false;
         return this;
     }
 
@@ -376,15 +526,14 @@ public class Page {
      * @return self
      */
     public Page setSecondTextureWithFirst() {
-        if (mTexIDs[SECOND_TEXTURE_ID] > INVALID_TEXTURE_ID) {
-            mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[SECOND_TEXTURE_ID];
-        }
+        discardTexture(SECOND_TEXTURE_ID);
 
         maskColor[SECOND_TEXTURE_ID][0] = maskColor[FIRST_TEXTURE_ID][0];
         maskColor[SECOND_TEXTURE_ID][1] = maskColor[FIRST_TEXTURE_ID][1];
         maskColor[SECOND_TEXTURE_ID][2] = maskColor[FIRST_TEXTURE_ID][2];
-        mTexIDs[SECOND_TEXTURE_ID] = mTexIDs[FIRST_TEXTURE_ID];
-        mTexIDs[FIRST_TEXTURE_ID] = INVALID_TEXTURE_ID;
+        moveTexture(this, FIRST_TEXTURE_ID, SECOND_TEXTURE_ID);
+        mSecondaryBitmapLoading = mFirstBitmapLoading;
+        mFirstBitmapLoading = false;
         return this;
 
     }
@@ -398,23 +547,141 @@ public class Page {
      */
     public Page swapTexturesWithPage(Page page) {
         // [second page]: second -> first
-        mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[SECOND_TEXTURE_ID];
-        mTexIDs[SECOND_TEXTURE_ID] = mTexIDs[FIRST_TEXTURE_ID];
+        discardTexture(SECOND_TEXTURE_ID);
+        moveTexture(this, FIRST_TEXTURE_ID, SECOND_TEXTURE_ID);
 
         // [first page] first -> [second page] back of first
-        mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[BACK_TEXTURE_ID];
-        mTexIDs[BACK_TEXTURE_ID] = page.mTexIDs[FIRST_TEXTURE_ID];
+        discardTexture(BACK_TEXTURE_ID);
+        moveTexture(page, FIRST_TEXTURE_ID, BACK_TEXTURE_ID);
 
         // [first page] back of first -> [second page] first
-        mTexIDs[FIRST_TEXTURE_ID] = page.mTexIDs[BACK_TEXTURE_ID];
-        page.mTexIDs[BACK_TEXTURE_ID] = INVALID_TEXTURE_ID;
+        moveTexture(page, BACK_TEXTURE_ID, FIRST_TEXTURE_ID);
 
         // [first page] second -> [first page] first
-        page.mTexIDs[FIRST_TEXTURE_ID] = page.mTexIDs[SECOND_TEXTURE_ID];
-        page.mTexIDs[SECOND_TEXTURE_ID] = INVALID_TEXTURE_ID;
+        page.moveTexture(page, SECOND_TEXTURE_ID, FIRST_TEXTURE_ID);
         return this;
     }
 
+    /**
+     * Put texture to unused list, it will be deleted in next drawing
+     *
+     * @param index texture index
+     */
+    private void discardTexture(int index) {
+        if (mTexIDs[index] != INVALID_TEXTURE_ID) {
+            mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[index];
+            mUnusedBytes += mTexBytes[index];
+        }
+
+        mTexIDs[index] = INVALID_TEXTURE_ID;
+        mTexBytes[index] = 0;
+        mIsOverlay[index] = false;
+        markContentChanged();
+    }
+
+    /**
+     * Move texture from given page to this page
+     * <p>The target texture should be discarded or moved before calling</p>
+     *
+     * @param from page which holds the texture, could be this page
+     * @param fromIndex texture index of given page
+     * @param toIndex texture index of this page
+     */
+    private void moveTexture(Page from, int fromIndex, int toIndex) {
+        mTexIDs[toIndex] = from.mTexIDs[fromIndex];
+        mTexBytes[toIndex] = from.mTexBytes[fromIndex];
+        mTexDrawnSeq[toIndex] = from.mTexDrawnSeq[fromIndex];
+        mIsOverlay[toIndex] = from.mIsOverlay[fromIndex];
+        System.arraycopy(from.mOverlayRects[fromIndex], 0,
+                         mOverlayRects[toIndex], 0, 4);
+        mTexFormats[toIndex] = from.mTexFormats[fromIndex];
+        mTexScales[toIndex] = from.mTexScales[fromIndex];
+        mTexWidths[toIndex] = from.mTexWidths[fromIndex];
+        mTexHeights[toIndex] = from.mTexHeights[fromIndex];
+        mIsTexMipmapped[toIndex] = from.mIsTexMipmapped[fromIndex];
+
+        from.mTexIDs[fromIndex] = INVALID_TEXTURE_ID;
+        from.mTexBytes[fromIndex] = 0;
+        from.mIsOverlay[fromIndex] = false;
+        from.markContentChanged();
+        markContentChanged();
+
+        // make sure this page is tracked by texture manager
+        if (from != this && mTexIDs[toIndex] != INVALID_TEXTURE_ID) {
+            mGLThread = from.mGLThread;
+            TextureManager.get().onChanged(this, 0);
+        }
+    }
+
+    /**
+     * Does page hold any texture?
+     *
+     * @return true if there is any texture or unused texture not deleted
+     */
+    private boolean hasTextures() {
+        return mTexIDs[FIRST_TEXTURE_ID] != INVALID_TEXTURE_ID ||
+               mTexIDs[SECOND_TEXTURE_ID] != INVALID_TEXTURE_ID ||
+               mTexIDs[BACK_TEXTURE_ID] != INVALID_TEXTURE_ID ||
+               mUnusedTexSize > 0;
+    }
+
+    /**
+     * Start a new frame
+     * <p>Textures drawn in the last frame are visible and can't be evicted
+     * until the next frame is drawn</p>
+     */
+    void beginFrame() {
+        mDrawnMask = 0;
+    }
+
+    /**
+     * Get OpenGL thread which uploads textures of page
+     */
+    Thread getGLThread() {
+        return mGLThread;
+    }
+
+    /**
+     * Can texture be evicted by {@link TextureManager}?
+     *
+     * @param index texture index
+     * @return true if texture is set and not drawn in current or last frame
+     */
+    boolean isEvictable(int index) {
+        return mTexIDs[index] != INVALID_TEXTURE_ID &&
+               (mDrawnMask & (1 << index)) == 0;
+    }
+
+    /**
+     * Get drawn sequence number of texture
+     */
+    long getTextureDrawnSeq(int index) {
+        return mTexDrawnSeq[index];
+    }
+
+    /**
+     * Delete texture evicted by {@link TextureManager}
+     * <p>Page will see it as unset, it should be called in OpenGL thread</p>
+     *
+     * @param index texture index
+     */
+    void evictTexture(int index) {
+        glDeleteTextures(1, mTexIDs, index);
+        mTexIDs[index] = INVALID_TEXTURE_ID;
+        mIsOverlay[index] = false;
+        markContentChanged();
+        if (index == FIRST_TEXTURE_ID) {
+            mFirstBitmapLoading = false;
+        }
+        else if (index == SECOND_TEXTURE_ID) {
+            mSecondaryBitmapLoading = false;
+        }
+
+        final long bytes = mTexBytes[index];
+        mTexBytes[index] = 0;
+        TextureManager.get().onReleased(this, bytes, hasTextures());
+    }
+
     /**
      * Get back texture ID
      *
@@ -430,6 +697,80 @@ public class Page {
         }
     }
 
+    /**
+     * Bind back texture and background layer for drawing fold back
+     *
+     * @param programs variants of GL shader program
+     * @return program variant in use
+     */
+    VertexProgram bindBackTexture(VertexProgramVariants programs) {
+        if (mTexIDs[BACK_TEXTURE_ID] == INVALID_TEXTURE_ID) {
+            return bindTexture(programs, FIRST_TEXTURE_ID);
+        }
+        else {
+            return bindTexture(programs, BACK_TEXTURE_ID);
+        }
+    }
+
+    /**
+     * Bind texture to GL_TEXTURE0, if it is an overlay, the background layer
+     * is bound to GL_TEXTURE2 to be composited in fragment shader
+     * <p>The program variant of texture is used before binding, caller
+     * should draw with the returned program</p>
+     *
+     * @param programs variants of GL shader program
+     * @param index texture index
+     * @return program variant in use
+     */
+    private VertexProgram bindTexture(VertexProgramVariants programs,
+                                      int index) {
+        final boolean isLayered = mIsOverlay[index] &&
+                                  mBackgroundTexID != INVALID_TEXTURE_ID;
+        final boolean isLuminance =
+                mTexFormats[index] == TEXTURE_FORMAT_LUMINANCE;
+        final VertexProgram program = programs.use(
+                isLayered ? VertexProgram.TEXTURE_LAYERED :
+                isLuminance ? VertexProgram.TEXTURE_LUMINANCE :
+                VertexProgram.TEXTURE_PLAIN);
+        if (isLuminance) {
+            glUniform4f(program.mTintLoc,
+                        Color.red(mTintColor) / 255.0f,
+                        Color.green(mTintColor) / 255.0f,
+                        Color.blue(mTintColor) / 255.0f,
+                        1.0f);
+        }
+        if (isLayered) {
+            final float[] rect = mOverlayRects[index];
+            glUniform4f(program.mOverlayRectLoc,
+                        rect[0], rect[1], rect[2], rect[3]);
+            glActiveTexture(GL_TEXTURE2);
+            glBindTexture(GL_TEXTURE_2D, mBackgroundTexID);
+            glUniform1i(program.mBackgroundLoc, 2);
+            glActiveTexture(GL_TEXTURE0);
+        }
+
+        glBindTexture(GL_TEXTURE_2D, mTexIDs[index]);
+        glUniform1i(program.mTextureLoc, 0);
+
+        mDrawnMask |= 1 << index;
+        mTexDrawnSeq[index] = TextureManager.get().nextDrawnSeq();
+        return program;
+    }
+
+    /**
+     * Set background layer shared by pages
+     * <p>The background layer is only used by textures which are set as
+     * overlay, texture id is owned by caller</p>
+     *
+     * @param textureID background texture id, -1 means no background layer
+     * @param color average color of background
+     */
+    void setBackgroundLayer(int textureID, int color) {
+        mBackgroundTexID = textureID;
+        mBackgroundColor = color;
+        markContentChanged();
+    }
+
     /**
      * Is given point(x, y) in page?
      *
@@ -557,54 +898,157 @@ public class Page {
 
     /**
      * Delete all textures
+     * <p>It should be called in OpenGL thread</p>
      */
     public void deleteAllTextures() {
+        deleteUnusedTextures();
         glDeleteTextures(TEXTURE_SIZE, mTexIDs, 0);
+        forgetAllTextures();
+    }
+
+    /**
+     * Forget all textures without deleting them
+     * <p>It is used after EGL context is lost, textures are already gone
+     * with the context and their ids could be reused by objects of the
+     * current context, deleting them would destroy those objects. Page sees
+     * all textures as unset and their bytes are released in
+     * {@link TextureManager}</p>
+     */
+    void forgetAllTextures() {
+        mUnusedTexSize = 0;
         mTexIDs[FIRST_TEXTURE_ID] = INVALID_TEXTURE_ID;
         mTexIDs[SECOND_TEXTURE_ID] = INVALID_TEXTURE_ID;
         mTexIDs[BACK_TEXTURE_ID] = INVALID_TEXTURE_ID;
+        mIsOverlay[FIRST_TEXTURE_ID] = false;
+        mIsOverlay[SECOND_TEXTURE_ID] = false;
+        mIsOverlay[BACK_TEXTURE_ID] = false;
+        markContentChanged();
+
+        final long bytes = mTexBytes[FIRST_TEXTURE_ID] +
+                           mTexBytes[SECOND_TEXTURE_ID] +
+                           mTexBytes[BACK_TEXTURE_ID] +
+                           mUnusedBytes;
+        mUnusedBytes = 0;
+        mTexBytes[FIRST_TEXTURE_ID] = 0;
+        mTexBytes[SECOND_TEXTURE_ID] = 0;
+        mTexBytes[BACK_TEXTURE_ID] = 0;
+        TextureManager.get().onReleased(this, bytes, false);
     }
 
     /**
      * Set the first texture with given bitmap
+     * <p>If the first texture is already set, its texture id will be reused
+     * and only the content is replaced</p>
      *
      * @param b Bitmap object for creating texture
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
      */
     public void setFirstTexture(Bitmap b, boolean loadingBitmap) {
+        setFirstTexture(b, loadingBitmap, mTextureFormat);
+    }
+
+    /**
+     * Set the first texture with given bitmap and texture format
+     *
+     * @param b Bitmap object for creating texture
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
+     * @param format TEXTURE_FORMAT_RGBA, TEXTURE_FORMAT_RGB_565 or
+     *               TEXTURE_FORMAT_LUMINANCE
+     * @see #setTextureFormat(int)
+     */
+    public void setFirstTexture(Bitmap b, boolean loadingBitmap, int format) {
         mFirstBitmapLoading = loadingBitmap;
-        // compute mask color
-        int color = PageFlipUtils.computeAverageColor(b, 30);
-        maskColor[FIRST_TEXTURE_ID][0] = Color.red(color) / 255.0f;
-        maskColor[FIRST_TEXTURE_ID][1] = Color.green(color) / 255.0f;
-        maskColor[FIRST_TEXTURE_ID][2] = Color.blue(color) / 255.0f;
+        setTexture(FIRST_TEXTURE_ID, b, false, format, 30);
+    }
 
-        glGenTextures(1, mTexIDs, FIRST_TEXTURE_ID);
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[FIRST_TEXTURE_ID]);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+    /**
+     * Set the first texture with an overlay bitmap which covers whole page
+     *
+     * @param b overlay bitmap with alpha
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
+     * @see #setFirstOverlay(Bitmap, boolean, RectF)
+     */
+    public void setFirstOverlay(Bitmap b, boolean loadingBitmap) {
+        setFirstOverlay(b, loadingBitmap, null);
+    }
+
+    /**
+     * Set the first texture with an overlay bitmap
+     * <p>The overlay only contains page foreground with transparent pixels,
+     * it is composited on the background layer set by
+     * {@link PageFlip#setBackgroundLayer(Bitmap)} when drawing.</p>
+     * <p>The overlay is stretched to the given rect of page and only the
+     * background layer is drawn outside the rect, so a small foreground like
+     * page number only needs a bitmap of its own size. The rect is in
+     * fraction of page content: [0 .. 1] from left to right and top to
+     * bottom of the content bitmap, it is rotated with page content if
+     * textures are rotated</p>
+     *
+     * @param b overlay bitmap with alpha
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
+     * @param rect rect of overlay in page content, null means whole page
+     */
+    public void setFirstOverlay(Bitmap b, boolean loadingBitmap, RectF rect) {
+        mFirstBitmapLoading = loadingBitmap;
+        setOverlay(FIRST_TEXTURE_ID, b, rect, 30);
     }
 
     /**
      * Set the second texture with given bitmap
+     * <p>If the second texture is already set, its texture id will be reused
+     * and only the content is replaced</p>
      *
      * @param b Bitmap object for creating texture
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
      */
     public void setSecondTexture(Bitmap b, boolean loadingBitmap) {
-        mFirstBitmapLoading = loadingBitmap;
-        // compute mask color
-        int color = PageFlipUtils.computeAverageColor(b, 30);
-        maskColor[SECOND_TEXTURE_ID][0] = Color.red(color) / 255.0f;
-        maskColor[SECOND_TEXTURE_ID][1] = Color.green(color) / 255.0f;
-        maskColor[SECOND_TEXTURE_ID][2] = Color.blue(color) / 255.0f;
+        setSecondTexture(b, loadingBitmap, mTextureFormat);
+    }
 
-        glGenTextures(1, mTexIDs, SECOND_TEXTURE_ID);
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[SECOND_TEXTURE_ID]);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+    /**
+     * Set the second texture with given bitmap and texture format
+     *
+     * @param b Bitmap object for creating texture
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
+     * @param format TEXTURE_FORMAT_RGBA, TEXTURE_FORMAT_RGB_565 or
+     *               TEXTURE_FORMAT_LUMINANCE
+     * @see #setTextureFormat(int)
+     */
+    public void setSecondTexture(Bitmap b, boolean loadingBitmap, int format) {
+        mSecondaryBitmapLoading = loadingBitmap;
+        setTexture(SECOND_TEXTURE_ID, b, false, format, 30);
+    }
+
+    /**
+     * Set the second texture with an overlay bitmap
+     *
+     * @param b overlay bitmap with alpha
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
+     * @see #setFirstOverlay(Bitmap, boolean, RectF)
+     */
+    public void setSecondOverlay(Bitmap b, boolean loadingBitmap) {
+        setSecondOverlay(b, loadingBitmap, null);
+    }
+
+    /**
+     * Set the second texture with an overlay bitmap in given rect of page
+     *
+     * @param b overlay bitmap with alpha
+     * @param loadingBitmap true if bitmap is a placeholder or preview which
+     *                      will be replaced later
+     * @param rect rect of overlay in page content, null means whole page
+     * @see #setFirstOverlay(Bitmap, boolean, RectF)
+     */
+    public void setSecondOverlay(Bitmap b, boolean loadingBitmap, RectF rect) {
+        mSecondaryBitmapLoading = loadingBitmap;
+        setOverlay(SECOND_TEXTURE_ID, b, rect, 30);
     }
 
     /**
@@ -615,75 +1059,490 @@ public class Page {
      * @param b Bitmap object for creating back texture
      */
     public void setBackTexture(Bitmap b) {
+        setBackTexture(b, mTextureFormat);
+    }
+
+    /**
+     * Set the back texture with given bitmap and texture format
+     *
+     * @param b Bitmap object for creating back texture, null means back
+     *          texture is same with the first texture
+     * @param format TEXTURE_FORMAT_RGBA, TEXTURE_FORMAT_RGB_565 or
+     *               TEXTURE_FORMAT_LUMINANCE
+     * @see #setTextureFormat(int)
+     */
+    public void setBackTexture(Bitmap b, int format) {
         if (b == null) {
             // back texture is same with the first texture
-            if (mTexIDs[BACK_TEXTURE_ID] != INVALID_TEXTURE_ID) {
-                mUnusedTexIDs[mUnusedTexSize++] = mTexIDs[BACK_TEXTURE_ID];
+            discardTexture(BACK_TEXTURE_ID);
+        }
+        else {
+            setTexture(BACK_TEXTURE_ID, b, false, format, 50);
+        }
+    }
+
+    /**
+     * Set the back texture with an overlay bitmap
+     *
+     * @param b overlay bitmap with alpha
+     * @see #setFirstOverlay(Bitmap, boolean, RectF)
+     */
+    public void setBackOverlay(Bitmap b) {
+        setBackOverlay(b, null);
+    }
+
+    /**
+     * Set the back texture with an overlay bitmap in given rect of page
+     *
+     * @param b overlay bitmap with alpha
+     * @param rect rect of overlay in page content, null means whole page
+     * @see #setFirstOverlay(Bitmap, boolean, RectF)
+     */
+    public void setBackOverlay(Bitmap b, RectF rect) {
+        setOverlay(BACK_TEXTURE_ID, b, rect, 50);
+    }
+
+    /**
+     * Set default format of textures
+     * <p>
+     * The format is used by texture setters without a format parameter.
+     * Bitmap with a different config will be converted before uploading, to
+     * avoid the conversion, use ARGB_8888 bitmap for TEXTURE_FORMAT_RGBA,
+     * RGB_565 bitmap for TEXTURE_FORMAT_RGB_565 and ALPHA_8 bitmap whose
+     * alpha is luminance for TEXTURE_FORMAT_LUMINANCE
+     * </p>
+     *
+     * @param format TEXTURE_FORMAT_RGBA, TEXTURE_FORMAT_RGB_565 or
+     *               TEXTURE_FORMAT_LUMINANCE
+     * @return self
+     */
+    public Page setTextureFormat(int format) {
+        mTextureFormat = format;
+        return this;
+    }
+
+    /**
+     * Get default format of textures
+     *
+     * @return texture format
+     */
+    public int getTextureFormat() {
+        return mTextureFormat;
+    }
+
+    /**
+     * Enable/Disable downscaling textures to on-screen page size
+     * <p>If it is enabled, a bitmap larger than {@link #width()} x
+     * {@link #height()} will be scaled down before uploading, it saves memory
+     * and bandwidth when page is shown in a small window</p>
+     * <p>Scaling is done in OpenGL thread and allocates a new bitmap for
+     * every uploading, it is only a fallback. Loaders should scale bitmaps to
+     * {@link #getTextureUploadWidth()} x {@link #getTextureUploadHeight()}
+     * in their worker threads</p>
+     *
+     * @param enable true if enable
+     * @return self
+     */
+    public Page enableTextureDownscale(boolean enable) {
+        mIsDownscaleEnabled = enable;
+        return this;
+    }
+
+    /**
+     * Get width of bitmap which is uploaded without being scaled
+     * <p>It is the on-screen page width in pixels, or page height if
+     * textures are rotated since content is inverted against page</p>
+     *
+     * @return width of page content in pixels
+     */
+    public int getTextureUploadWidth() {
+        return Math.max(1, Math.round(mIsTexRotated ? height : width));
+    }
+
+    /**
+     * Get height of bitmap which is uploaded without being scaled
+     *
+     * @return height of page content in pixels
+     * @see #getTextureUploadWidth()
+     */
+    public int getTextureUploadHeight() {
+        return Math.max(1, Math.round(mIsTexRotated ? width : height));
+    }
+
+    /**
+     * Enable/Disable mipmaps of textures
+     * <p>Mipmaps make minified page smoother and cheaper to sample with one
+     * third extra memory. It only takes effect on power-of-two bitmaps if
+     * GPU doesn't support mipmaps of NPOT textures</p>
+     *
+     * @param enable true if enable
+     * @return self
+     */
+    public Page enableMipmap(boolean enable) {
+        mIsMipmapEnabled = enable;
+        return this;
+    }
+
+    /**
+     * Set tint color of luminance textures
+     * <p>A luminance texture is drawn with its luminance multiplied by tint
+     * color, white means drawing as grayscale</p>
+     *
+     * @param color tint color
+     * @return self
+     */
+    public Page setTintColor(int color) {
+        if (mTintColor != color) {
+            mTintColor = color;
+            markContentChanged();
+        }
+        return this;
+    }
+
+    /**
+     * Set overlay rect and upload overlay bitmap to texture
+     *
+     * @param index texture index
+     * @param b overlay bitmap
+     * @param rect rect of overlay in page content, null means whole page
+     * @param samplingOffset sampling offset for computing average color
+     */
+    private void setOverlay(int index, Bitmap b, RectF rect,
+                            int samplingOffset) {
+        final float[] r = mOverlayRects[index];
+        if (rect == null || rect.width() <= 0 || rect.height() <= 0) {
+            r[0] = 0;
+            r[1] = 0;
+            r[2] = 1;
+            r[3] = 1;
+        }
+        else {
+            r[0] = rect.left;
+            r[1] = rect.top;
+            r[2] = 1 / rect.width();
+            r[3] = 1 / rect.height();
+        }
+        setTexture(index, b, true, TEXTURE_FORMAT_RGBA, samplingOffset);
+    }
+
+    /**
+     * Compute mask color and upload bitmap to texture
+     *
+     * @param index texture index
+     * @param b Bitmap object
+     * @param isOverlay is bitmap an overlay on background layer
+     * @param format texture format
+     * @param samplingOffset sampling offset for computing average color
+     */
+    private void setTexture(int index, Bitmap b, boolean isOverlay,
+                            int format, int samplingOffset) {
+        // mask color of overlay is from background layer since most of its
+        // pixels are transparent
+        int color = isOverlay ? mBackgroundColor
+                              : PageFlipUtils.computeAverageColor(
+                                                    b, samplingOffset);
+        if (format == TEXTURE_FORMAT_LUMINANCE) {
+            int l = b.getConfig() == Bitmap.Config.ALPHA_8 ?
+                    Color.alpha(color) : PageFlipUtils.computeLuminance(color);
+            color = Color.rgb(Color.red(mTintColor) * l / 255,
+                              Color.green(mTintColor) * l / 255,
+                              Color.blue(mTintColor) * l / 255);
+        }
+        maskColor[index][0] = Color.red(color) / 255.0f;
+        maskColor[index][1] = Color.green(color) / 255.0f;
+        maskColor[index][2] = Color.blue(color) / 255.0f;
+        mIsOverlay[index] = isOverlay;
+        mTexFormats[index] = format;
+
+        // convert bitmap to config of texture format
+        final Bitmap.Config config = configOf(format);
+
+        // scale bitmap to on-screen page size, overlay is only shown in its
+        // rect of page. It is a fallback for bitmaps which are not scaled to
+        // upload size by loader
+        Bitmap scaled = b;
+        if (mIsDownscaleEnabled) {
+            float pageW = getTextureUploadWidth();
+            float pageH = getTextureUploadHeight();
+            if (isOverlay) {
+                pageW /= mOverlayRects[index][2];
+                pageH /= mOverlayRects[index][3];
+            }
+            final float scale = Math.min(pageW / b.getWidth(),
+                                         pageH / b.getHeight());
+            if (scale < 1) {
+                scaled = Bitmap.createScaledBitmap(
+                        b,
+                        Math.max(1, Math.round(b.getWidth() * scale)),
+                        Math.max(1, Math.round(b.getHeight() * scale)),
+                        true);
             }
-            mTexIDs[BACK_TEXTURE_ID] = INVALID_TEXTURE_ID;
+        }
+        mTexScales[index] = (float)scaled.getWidth() / b.getWidth();
+
+        Bitmap converted = PageFlipUtils.convertBitmap(scaled, config);
+        glActiveTexture(GL_TEXTURE0);
+        uploadTexture(index, converted);
+        if (converted != scaled) {
+            converted.recycle();
+        }
+        if (scaled != b) {
+            scaled.recycle();
+        }
+    }
+
+    /**
+     * Update a region of texture with given bitmap
+     * <p>
+     * Only pixels in the given rectangle are uploaded into the existing
+     * texture by glTexSubImage2D, it is much cheaper than setting the whole
+     * texture again when a small part of page is changed, for example:
+     * highlights, annotations or loading progress. The mask color is not
+     * recomputed.
+     * </p>
+     * <p>
+     * The bitmap could be the whole page content or only the content of
+     * region which has the same size with rectangle, it is converted to the
+     * config of texture format if they are different. The rectangle is in
+     * pixel coordinates of texture bitmap, if texture is downscaled, the
+     * region will be scaled too and clamped to texture size. Scaling region
+     * allocates bitmap in OpenGL thread, so it is better to set texture with
+     * a bitmap of {@link #getTextureUploadWidth()} x
+     * {@link #getTextureUploadHeight()}. It should be called in OpenGL
+     * thread
+     * </p>
+     *
+     * @param which FIRST_TEXTURE_ID, SECOND_TEXTURE_ID or BACK_TEXTURE_ID
+     * @param b bitmap of page content or region content
+     * @param region changed rectangle of texture
+     * @return false if texture is not set or region is empty
+     */
+    public boolean updateTextureRegion(int which, Bitmap b, Rect region) {
+        if (which < FIRST_TEXTURE_ID || which > BACK_TEXTURE_ID ||
+            mTexIDs[which] == INVALID_TEXTURE_ID ||
+            region.isEmpty()) {
+            return false;
+        }
+
+        final int width = region.width();
+        final int height = region.height();
+        Bitmap sub = b;
+        if (b.getWidth() != width || b.getHeight() != height) {
+            sub = Bitmap.createBitmap(b, region.left, region.top,
+                                      width, height);
+        }
+
+        // scale region for downscaled texture, rounding up the right and
+        // bottom edges must not go out of texture
+        int x = region.left;
+        int y = region.top;
+        final float scale = mTexScales[which];
+        if (scale < 1) {
+            x = (int)(region.left * scale);
+            y = (int)(region.top * scale);
+            final int right = Math.min(mTexWidths[which],
+                                       (int)Math.ceil(region.right * scale));
+            final int bottom = Math.min(mTexHeights[which],
+                                        (int)Math.ceil(region.bottom * scale));
+            if (x >= right || y >= bottom) {
+                if (sub != b) {
+                    sub.recycle();
+                }
+                return false;
+            }
+
+            Bitmap scaled = Bitmap.createScaledBitmap(sub, right - x,
+                                                      bottom - y, true);
+            if (sub != b) {
+                sub.recycle();
+            }
+            sub = scaled;
+        }
+
+        // convert to the config which texture is uploaded with
+        Bitmap converted = PageFlipUtils.convertBitmap(
+                sub, configOf(mTexFormats[which]));
+        if (converted != sub) {
+            if (sub != b) {
+                sub.recycle();
+            }
+            sub = converted;
+        }
+
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, mTexIDs[which]);
+        // rows of ALPHA_8 and RGB_565 bitmaps may not be 4-byte aligned
+        if (sub.getConfig() != Bitmap.Config.ARGB_8888) {
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+            GLUtils.texSubImage2D(GL_TEXTURE_2D, 0, x, y, sub);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
         }
         else {
-            // compute mask color
-            int color = PageFlipUtils.computeAverageColor(b, 50);
-            maskColor[BACK_TEXTURE_ID][0] = Color.red(color) / 255.0f;
-            maskColor[BACK_TEXTURE_ID][1] = Color.green(color) / 255.0f;
-            maskColor[BACK_TEXTURE_ID][2] = Color.blue(color) / 255.0f;
-
-            glGenTextures(1, mTexIDs, BACK_TEXTURE_ID);
-            glBindTexture(GL_TEXTURE_2D, mTexIDs[BACK_TEXTURE_ID]);
-            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            GLUtils.texSubImage2D(GL_TEXTURE_2D, 0, x, y, sub);
+        }
+        if (mIsTexMipmapped[which]) {
+            glGenerateMipmap(GL_TEXTURE_2D);
+        }
+
+        if (sub != b) {
+            sub.recycle();
+        }
+        markContentChanged();
+        return true;
+    }
+
+    /**
+     * Get bitmap config of texture format
+     *
+     * @param format texture format
+     * @return bitmap config which texture is uploaded with
+     */
+    private static Bitmap.Config configOf(int format) {
+        if (format == TEXTURE_FORMAT_RGB_565) {
+            return Bitmap.Config.RGB_565;
+        }
+        else if (format == TEXTURE_FORMAT_LUMINANCE) {
+            return Bitmap.Config.ALPHA_8;
+        }
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Upload bitmap to texture with given index
+     * <p>Generate a new texture id if it is not set, otherwise, reuse it to
+     * avoid leaking the old one</p>
+     *
+     * @param index texture index: FIRST_TEXTURE_ID, SECOND_TEXTURE_ID or
+     *              BACK_TEXTURE_ID
+     * @param b Bitmap object
+     */
+    private void uploadTexture(int index, Bitmap b) {
+        // make room for new texture in memory budget
+        final TextureManager manager = TextureManager.get();
+        final boolean isMipmap = mIsMipmapEnabled &&
+                                 PageFlipUtils.canGenerateMipmap(b);
+        long bytes = (long)b.getRowBytes() * b.getHeight();
+        if (isMipmap) {
+            // all mipmap levels take one third extra memory
+            bytes += bytes / 3;
+        }
+        manager.reserve(bytes - mTexBytes[index], this, index);
+        mGLThread = Thread.currentThread();
+
+        if (mTexIDs[index] == INVALID_TEXTURE_ID) {
+            glGenTextures(1, mTexIDs, index);
+            glBindTexture(GL_TEXTURE_2D, mTexIDs[index]);
             glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        }
+        else {
+            glBindTexture(GL_TEXTURE_2D, mTexIDs[index]);
+        }
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER,
+                        isMipmap ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR);
+
+        // rows of ALPHA_8 and RGB_565 bitmaps may not be 4-byte aligned
+        if (b.getConfig() != Bitmap.Config.ARGB_8888) {
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+            GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+            glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+        }
+        else {
             GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
         }
+
+        if (isMipmap) {
+            glGenerateMipmap(GL_TEXTURE_2D);
+        }
+        mIsTexMipmapped[index] = isMipmap;
+        mTexWidths[index] = b.getWidth();
+        mTexHeights[index] = b.getHeight();
+
+        manager.onChanged(this, bytes - mTexBytes[index]);
+        mTexBytes[index] = bytes;
+        mTexDrawnSeq[index] = manager.nextDrawnSeq();
+        markContentChanged();
     }
 
     /**
      * Draw front page when page is flipping
      *
-     * @param program GL shader program
+     * @param programs variants of GL shader program
      * @param vertexes Vertexes of the curled front page
      */
-    public void drawFrontPage(VertexProgram program,
+    public void drawFrontPage(VertexProgramVariants programs,
                               Vertexes vertexes) {
         // 1. draw unfold part and curled part with the first texture
-        glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false,
-                           VertexProgram.MVPMatrix, 0);
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[FIRST_TEXTURE_ID]);
-        glUniform1i(program.mTextureLoc, 0);
+        final VertexProgram program = bindTexture(programs, FIRST_TEXTURE_ID);
         vertexes.drawWith(GL_TRIANGLE_STRIP,
                           program.mVertexPosLoc,
                           program.mTexCoordLoc,
                           0, mFrontVertexSize);
 
         // 2. draw the second texture
-        glBindTexture(GL_TEXTURE_2D, mTexIDs[SECOND_TEXTURE_ID]);
-        glUniform1i(program.mTextureLoc, 0);
+        // attribute locations could be changed if program variant is changed
+        final VertexProgram second = bindTexture(programs, SECOND_TEXTURE_ID);
+        if (second == program) {
+            glDrawArrays(GL_TRIANGLE_STRIP,
+                         mFrontVertexSize,
+                         vertexes.mVertexesSize - mFrontVertexSize);
+        }
+        else {
+            vertexes.drawWith(GL_TRIANGLE_STRIP,
+                              second.mVertexPosLoc,
+                              second.mTexCoordLoc,
+                              mFrontVertexSize,
+                              vertexes.mVertexesSize - mFrontVertexSize);
+        }
+    }
+
+    /**
+     * Draw the same geometry with {@link #drawFrontPage} by overdraw program
+     *
+     * @param program overdraw program
+     * @param vertexes vertexes of the curled front page
+     */
+    void drawFrontPage(OverdrawProgram program, Vertexes vertexes) {
+        vertexes.drawPositionsWith(GL_TRIANGLE_STRIP,
+                                   program.mVertexPosLoc,
+                                   0, mFrontVertexSize);
         glDrawArrays(GL_TRIANGLE_STRIP,
                      mFrontVertexSize,
                      vertexes.mVertexesSize - mFrontVertexSize);
     }
 
+    /**
+     * Draw the same geometry with {@link #drawFullPage(
+     * VertexProgramVariants, boolean)} by overdraw program
+     *
+     * @param program overdraw program
+     */
+    void drawFullPage(OverdrawProgram program) {
+        glVertexAttribPointer(program.mVertexPosLoc, 3, GL_FLOAT, false, 0,
+                              mFullPageVexBuf);
+        glEnableVertexAttribArray(program.mVertexPosLoc);
+        glDrawArrays(GL_TRIANGLE_FAN, 0, 4);
+    }
+
     /**
      * Draw full page
      *
-     * @param program GL shader program
+     * @param programs variants of GL shader program
      * @param isFirst use the first or second texture to draw
      */
-    public void drawFullPage(VertexProgram program, boolean isFirst) {
+    public void drawFullPage(VertexProgramVariants programs, boolean isFirst) {
         if (isFirst) {
-            drawFullPage(program, mTexIDs[FIRST_TEXTURE_ID]);
+            drawFullPage(programs, FIRST_TEXTURE_ID);
         }
         else {
-            drawFullPage(program, mTexIDs[SECOND_TEXTURE_ID]);
+            drawFullPage(programs, SECOND_TEXTURE_ID);
         }
     }
 
     /**
-     * Draw full page with given texture id
+     * Draw full page with given texture index
      */
-    private void drawFullPage(VertexProgram program, int textureID) {
-        glBindTexture(GL_TEXTURE_2D, textureID);
-        glUniform1i(program.mTextureLoc, 0);
+    private void drawFullPage(VertexProgramVariants programs, int index) {
+        final VertexProgram program = bindTexture(programs, index);
 
         glVertexAttribPointer(program.mVertexPosLoc, 3, GL_FLOAT, false, 0,
                               mFullPageVexBuf);
@@ -928,6 +1787,18 @@ public class Page {
         mApexTexCoords[j] = textureY(bottom);
 
         mFullPageVexBuf.put(mApexes, 0, 12).position(0);
-        mFullPageTexCoordsBuf.put(mApexTexCoords, 0, 8).position(0);
+
+        // mApexTexCoords are also used to build fold vertexes, they should be
+        // kept in page coordinate and only rotate the full page buffer
+        if (mIsTexRotated) {
+            for (int k = 0; k < 8; k += 2) {
+                mFullPageTexCoordsBuf.put(k, mApexTexCoords[k + 1])
+                                     .put(k + 1, 1 - mApexTexCoords[k]);
+            }
+            mFullPageTexCoordsBuf.position(0);
+        }
+        else {
+            mFullPageTexCoordsBuf.put(mApexTexCoords, 0, 8).position(0);
+        }
     }
 }
@@ -17,12 +17,13 @@ package com.eschao.android.widget.pageflip;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.graphics.Point;
 import android.graphics.PointF;
+import android.graphics.RectF;
 import android.opengl.GLUtils;
 import android.util.Log;
-import android.view.animation.AccelerateInterpolator;
-import android.widget.Scroller;
+import android.view.animation.Interpolator;
 
 import static android.opengl.GLES20.GL_COLOR_BUFFER_BIT;
 import static android.opengl.GLES20.GL_DEPTH_BUFFER_BIT;
@@ -32,29 +33,49 @@ import static android.opengl.GLES20.GL_TEXTURE0;
 import static android.opengl.GLES20.GL_TEXTURE_2D;
 import static android.opengl.GLES20.GL_TEXTURE_MAG_FILTER;
 import static android.opengl.GLES20.GL_TEXTURE_MIN_FILTER;
+import static android.opengl.GLES20.GL_TRIANGLE_STRIP;
 import static android.opengl.GLES20.glActiveTexture;
 import static android.opengl.GLES20.glBindTexture;
 import static android.opengl.GLES20.glClear;
 import static android.opengl.GLES20.glClearColor;
 import static android.opengl.GLES20.glClearDepthf;
+import static android.opengl.GLES20.glDeleteTextures;
 import static android.opengl.GLES20.glEnable;
 import static android.opengl.GLES20.glGenTextures;
 import static android.opengl.GLES20.glTexParameterf;
+import static android.opengl.GLES20.glUniform1f;
+import static android.opengl.GLES20.glUniform4f;
 import static android.opengl.GLES20.glUniformMatrix4fv;
 import static android.opengl.GLES20.glUseProgram;
 import static android.opengl.GLES20.glViewport;
 
 /**
  * 3D Style Page Flip
+ * <p>
+ * PageFlip is not thread safe, all methods including finger events should be
+ * called in OpenGL thread. Touch points written by finger events are read
+ * when geometry of fold page is rebuilt in drawing, so events caught in main
+ * thread should be handed over to OpenGL thread as a whole, for example:
+ * posting an immutable event object by a concurrent queue or
+ * GLSurfaceView#queueEvent(), instead of calling finger events in main thread
+ * </p>
  *
  * @author escchao
  */
 public class PageFlip {
     final static String TAG    = "PageFlip";
 
+    // modes of touch prediction
+    public final static int TOUCH_PREDICTION_NONE = 0;
+    public final static int TOUCH_PREDICTION_LINEAR = TouchPredictor.MODE_LINEAR;
+    public final static int TOUCH_PREDICTION_KALMAN = TouchPredictor.MODE_KALMAN;
+
     // default pixels of mesh vertex
     private final static int DEFAULT_MESH_VERTEX_PIXELS = 10;
     private final static int MESH_COUNT_THRESHOLD = 20;
+    // riffle flip uses a coarse mesh which is scaled from the normal one
+    private final static int RIFFLE_MESH_SCALE = 4;
+    private final static int RIFFLE_MESH_COUNT_THRESHOLD = 6;
 
     // The min page curl angle (5 degree)
     private final static int MIN_PAGE_CURL_ANGLE = 5;
@@ -83,6 +104,22 @@ public class PageFlip {
     // width ratio of triggering restore flip
     private final static float WIDTH_RATIO_OF_RESTORE_FLIP = 0.4f;
 
+    // minimum fling velocity(dp per second) to complete or cancel a flip
+    // regardless of where finger is up
+    private final static float MIN_FLING_VELOCITY_DP = 1000f;
+    // flip animation of a fling takes this times of the time that finger
+    // needs to cover the remaining distance, since easing curve starts slower
+    // than finger
+    private final static float FLING_DURATION_FACTOR = 2.0f;
+    // minimum duration of flip animation in milliseconds
+    private final static int MIN_FLIP_DURATION = 150;
+
+    // maximum distance(dp) of predicted touch point from the real one
+    private final static float MAX_PREDICTION_DP = 48f;
+
+    // moving less than it in pixels won't rebuild geometry of fold page
+    private final static float SUB_PIXEL_THRESHOLD = 0.5f;
+
     // folder page shadow color buffer size
     private final static int FOLD_TOP_EDGE_SHADOW_VEX_COUNT = 22;
 
@@ -111,8 +148,9 @@ public class PageFlip {
     // the pixel size for each mesh
     private int mPixelsOfMesh;
 
-    // gradient shadow texture id
-    private int mGradientShadowTextureID;
+    // background layer texture id shared by pages and its average color
+    private int mBackgroundTextureID;
+    private int mBackgroundColor;
 
     // touch point and last touch point
     private PointF mTouchP;
@@ -196,17 +234,24 @@ public class PageFlip {
     private ShadowVertexes mFoldEdgesShadow;
     private ShadowVertexes mFoldBaseShadow;
 
-    // Shader program for openGL drawing
-    private VertexProgram mVertexProgram;
-    private FoldBackVertexProgram mFoldBackVertexProgram;
+    // shared shader programs and textures of current EGL context
+    private GLResources mResources;
+    // Shader program for openGL drawing, they are shared by all instances
+    private VertexProgramVariants mVertexPrograms;
+    private VertexProgramVariants mFoldBackPrograms;
+    private VertexProgramVariants mUnmaskedFoldBackPrograms;
     private ShadowVertexProgram mShadowVertexProgram;
+    // model-view-project matrix of this instance
+    private final float[] mMVPMatrix;
 
     // is vertical page flip
     private boolean mIsVertical;
     private PageFlipState mFlipState;
 
-    // use for flip animation
-    private Scroller mScroller;
+    // use for flip animation, it is sampled with frame time given by render
+    // or clock
+    private FlipScroller mScroller;
+    private AnimationClock mClock;
     private Context mContext;
 
     // pages and page mode
@@ -223,13 +268,75 @@ public class PageFlip {
 
     // listener for page flipping
     private OnPageFlipListener mListener;
+    // listener for the end of flip animation
+    private OnPageFlipEndedListener mEndedListener;
+
+    // minimum fling velocity in pixels per second
+    private float mMinFlingVelocity;
+
+    // touch predictor, null means prediction is disabled
+    private TouchPredictor mPredictor;
+    // how long touch point is predicted ahead in nanoseconds
+    private long mPredictionNanos;
+    // predicted touch point: [x, y]
+    private float[] mPredictedP;
+
+    // is touch point moved and geometry of fold page needs to be rebuilt
+    // before drawing next frame? it is set and cleared in OpenGL thread
+    private boolean mIsGeometryDirty;
+
+    // is finger down while animating? the animation is retargeted to finger
+    // if it is moving, or a clicking flip is queued if it is up
+    private boolean mIsInterrupting;
+    // is animation stopped by finger grabbing fold page?
+    private boolean mIsGrabbed;
+    // clicking flip queued to start when the current animation is ended
+    private boolean mHasQueuedFlip;
+    private float mQueuedFlipX;
+    private float mQueuedFlipY;
+    private int mQueuedFlipDuration;
+
+    // flips of riffle which are not started yet
+    private int mRiffleRemaining;
+    // is the current flip a riffle flip drawn in low quality?
+    private boolean mIsRiffleFlip;
+    private boolean mIsRiffleForward;
+    private int mRiffleFlipDuration;
+
+    // cache of static page frame, it is created when frame is drawn
+    private boolean mIsFrameCacheEnabled;
+    private FrameCache mFrameCache;
+
+    // overdraw counter of flip frame for debugging
+    private boolean mIsOverdrawCounterEnabled;
+    private OverdrawCounter mOverdrawCounter;
+    // ratio of shaded fragments to covered pixels of the last flip frame
+    private float mOverdrawRatio;
 
     /**
      * Constructor
      */
     public PageFlip(Context context) {
         mContext = context;
-        mScroller = new Scroller(context);
+        mScroller = new FlipScroller();
+        mClock = AnimationClock.SYSTEM;
+        mMinFlingVelocity = MIN_FLING_VELOCITY_DP * context.getResources()
+                                                           .getDisplayMetrics()
+                                                           .density;
+        mPredictor = null;
+        mPredictionNanos = 0;
+        mPredictedP = new float[2];
+        mIsGeometryDirty = false;
+        mIsInterrupting = false;
+        mIsGrabbed = false;
+        mHasQueuedFlip = false;
+        mRiffleRemaining = 0;
+        mIsRiffleFlip = false;
+        mIsFrameCacheEnabled = false;
+        mFrameCache = null;
+        mIsOverdrawCounterEnabled = false;
+        mOverdrawCounter = null;
+        mOverdrawRatio = 0;
         mFlipState = PageFlipState.END_FLIP;
         mIsVertical = false;
         mViewRect = new GLViewRect();
@@ -237,10 +344,13 @@ public class PageFlip {
         mSemiPerimeterRatio = 0.8f;
         mIsClickToFlip = true;
         mListener = null;
+        mEndedListener = null;
         mWidthRationOfClickToFlip = WIDTH_RATIO_OF_CLICK_TO_FLIP;
 
         // init pages
         mPages = new Page[PAGE_SIZE];
+        mBackgroundTextureID = -1;
+        mBackgroundColor = Color.WHITE;
         mPageMode = SINGLE_PAGE_MODE;
 
         // key points
@@ -259,10 +369,9 @@ public class PageFlip {
         mFoldEdgesShadowWidth = new ShadowWidth(5, 30, 0.25f);
         mFoldBaseShadowWidth = new ShadowWidth(2, 40, 0.4f);
 
-        // init shader program
-        mVertexProgram = new VertexProgram();
-        mFoldBackVertexProgram = new FoldBackVertexProgram();
-        mShadowVertexProgram = new ShadowVertexProgram();
+        // shader programs are acquired when surface is created
+        mResources = null;
+        mMVPMatrix = new float[16];
 
         // init vertexes
         mFoldFrontVertexes = new Vertexes();
@@ -353,6 +462,73 @@ public class PageFlip {
         return this;
     }
 
+    /**
+     * Enable/Disable cache of static page frame
+     * <p>
+     * If enabled, the frame drawn by {@link #drawPageFrame()} is rendered to
+     * an offscreen texture once and redrawn with a single quad until content
+     * of any page is changed, an idle page costs only one blit per frame. The
+     * cache takes extra memory of a RGBA texture with surface size.
+     * </p>
+     *
+     * @param enable true if enable
+     * @return self
+     */
+    public PageFlip enableFrameCache(boolean enable) {
+        mIsFrameCacheEnabled = enable;
+        return this;
+    }
+
+    /**
+     * Is cache of static page frame enabled?
+     *
+     * @return true if enabled
+     */
+    public boolean isFrameCacheEnabled() {
+        return mIsFrameCacheEnabled;
+    }
+
+    /**
+     * Enable/Disable overdraw counter of flip frame
+     * <p>
+     * It is for debugging. If enabled, geometry of every frame drawn by
+     * {@link #drawFlipFrame()} is drawn one more time with a flat color and
+     * additive blending, pixels are read back to count how many fragments
+     * are shaded, see {@link #getOverdrawRatio()}. It makes flipping much
+     * slower, don't enable it in release.
+     * </p>
+     *
+     * @param enable true if enable
+     * @return self
+     */
+    public PageFlip enableOverdrawCounter(boolean enable) {
+        mIsOverdrawCounterEnabled = enable;
+        mOverdrawRatio = 0;
+        return this;
+    }
+
+    /**
+     * Is overdraw counter of flip frame enabled?
+     *
+     * @return true if enabled
+     */
+    public boolean isOverdrawCounterEnabled() {
+        return mIsOverdrawCounterEnabled;
+    }
+
+    /**
+     * Get overdraw ratio of the last flip frame
+     * <p>It is shaded fragments divided by pixels covered by pages, 1 means
+     * every pixel is only shaded once. Blended shadows are counted too, so it
+     * is a little bigger than 1 even without overdraw of pages</p>
+     *
+     * @return overdraw ratio or 0 if counter is disabled or no flip frame is
+     *         counted
+     */
+    public float getOverdrawRatio() {
+        return mOverdrawRatio;
+    }
+
     /**
      * Set listener for page flip
      * <p>
@@ -368,6 +544,79 @@ public class PageFlip {
         return this;
     }
 
+    /**
+     * Set clock of flip animation
+     * <p>Clock is used if render steps animation by {@link #animating()}
+     * without giving frame time. A fake clock can be set to drive animation
+     * deterministically</p>
+     *
+     * @param clock animation clock, null means system clock
+     * @return self
+     */
+    public PageFlip setAnimationClock(AnimationClock clock) {
+        mClock = clock != null ? clock : AnimationClock.SYSTEM;
+        return this;
+    }
+
+    /**
+     * Set easing curve of flip animation
+     *
+     * @param interpolator easing curve, null means the default viscous fluid
+     *                     curve of {@link android.widget.Scroller}
+     * @return self
+     */
+    public PageFlip setEasing(Interpolator interpolator) {
+        mScroller.setInterpolator(interpolator);
+        return this;
+    }
+
+    /**
+     * Set touch prediction
+     * <p>
+     * If it is enabled, page is curled with a touch point predicted ahead of
+     * the real one to compensate the latency from input to display. Normally,
+     * it is the sum of input latency and one or two frames
+     * </p>
+     *
+     * @param mode {@link #TOUCH_PREDICTION_NONE},
+     *             {@link #TOUCH_PREDICTION_LINEAR} or
+     *             {@link #TOUCH_PREDICTION_KALMAN}
+     * @param aheadMs how long to predict ahead in milliseconds
+     * @return self
+     */
+    public PageFlip setTouchPrediction(int mode, int aheadMs) {
+        if (mode != TOUCH_PREDICTION_LINEAR && mode != TOUCH_PREDICTION_KALMAN
+            || aheadMs <= 0) {
+            mPredictor = null;
+            mPredictionNanos = 0;
+            return this;
+        }
+
+        float maxDistance = MAX_PREDICTION_DP * mContext.getResources()
+                                                        .getDisplayMetrics()
+                                                        .density;
+        mPredictor = new TouchPredictor(mode, maxDistance);
+        mPredictionNanos = aheadMs * 1000000L;
+        return this;
+    }
+
+    /**
+     * Set listener for the end of flip animation
+     * <p>
+     * The listener is called in the thread stepping animation by
+     * {@link #animating()}, render can step animation in its OpenGL render
+     * loop and handle the end state in the same thread
+     * </p>
+     *
+     * @param listener a listener for the end of flip animation
+     * @return self
+     */
+    public PageFlip setOnPageFlipEndedListener(
+                                        OnPageFlipEndedListener listener) {
+        mEndedListener = listener;
+        return this;
+    }
+
     /**
      * Sets pixels of each mesh
      * <p>The default value is 10 pixels for each mesh</p>
@@ -524,24 +773,54 @@ public class PageFlip {
      * @throws PageFlipException if failed to compile and link OpenGL shader
      */
     public void onSurfaceCreated() throws PageFlipException {
+        // textures and framebuffer of old context are gone, forget them
+        // instead of deleting ids which could belong to the current context
+        mBackgroundTextureID = -1;
+        if (mFrameCache != null) {
+            mFrameCache.forget();
+            mFrameCache = null;
+        }
+        for (Page page : mPages) {
+            if (page != null) {
+                page.forgetAllTextures();
+                page.setBackgroundLayer(-1, mBackgroundColor);
+            }
+        }
         glClearColor(0, 0, 0, 1f);
         glClearDepthf(1.0f);
         glEnable(GL_DEPTH_TEST);
 
-        try {
-            // init shader programs
-            mVertexProgram.init(mContext);
-            mFoldBackVertexProgram.init(mContext);
-            mShadowVertexProgram.init(mContext);
+        // release resources of old context and acquire shared shader
+        // programs and gradient shadow texture of current context
+        release();
+        mResources = GLResources.acquire(mContext);
+        mVertexPrograms = mResources.mVertexPrograms;
+        mFoldBackPrograms = mResources.mFoldBackPrograms;
+        mUnmaskedFoldBackPrograms = mResources.mUnmaskedFoldBackPrograms;
+        mShadowVertexProgram = mResources.mShadowVertexProgram;
+    }
+
+    /**
+     * Release page textures and shared OpenGL resources
+     * <p>It should be called in OpenGL thread when PageFlip isn't used any
+     * more, resources will be acquired again in {@link #onSurfaceCreated()}
+     * </p>
+     */
+    public void release() {
+        for (Page page : mPages) {
+            if (page != null) {
+                page.deleteAllTextures();
+            }
+        }
 
-            // create gradient shadow texture
-            createGradientShadowTexture();
+        if (mFrameCache != null) {
+            mFrameCache.delete();
+            mFrameCache = null;
         }
-        catch (PageFlipException e) {
-            mVertexProgram.delete();
-            mFoldBackVertexProgram.delete();
-            mShadowVertexProgram.delete();
-            throw e;
+
+        if (mResources != null) {
+            mResources.release();
+            mResources = null;
         }
     }
 
@@ -556,10 +835,14 @@ public class PageFlip {
                                                         PageFlipException {
         mViewRect.set(width, height);
         glViewport(0, 0, width, height);
-        mVertexProgram.initMatrix(-mViewRect.halfW, mViewRect.halfW,
-                                  -mViewRect.halfH, mViewRect.halfH);
+        VertexProgram.initMatrix(mMVPMatrix,
+                                 -mViewRect.halfW, mViewRect.halfW,
+                                 -mViewRect.halfH, mViewRect.halfH);
         computeMaxMeshCount();
         createPages();
+        if (mFrameCache != null) {
+            mFrameCache.invalidate();
+        }
     }
 
     /**
@@ -588,6 +871,14 @@ public class PageFlip {
                                           mViewRect.top, mViewRect.bottom);
             mPages[SECOND_PAGE] = null;
         }
+
+        // new pages share the same background layer
+        for (Page page : mPages) {
+            if (page != null) {
+                page.setBackgroundLayer(mBackgroundTextureID,
+                                        mBackgroundColor);
+            }
+        }
     }
 
     /**
@@ -597,10 +888,51 @@ public class PageFlip {
      * @param touchY y of finger down point
      */
     public void onFingerDown(float touchX, float touchY) {
+        onFingerDown(touchX, touchY, mClock.nanoTime());
+    }
+
+    /**
+     * Handle finger down event with event time
+     * <p>If page is animating, the animation isn't broken by finger down. It
+     * is retargeted to finger once finger is moved to grab the fold page, or
+     * a clicking flip is queued if finger is up without moving</p>
+     *
+     * @param touchX x of finger down point
+     * @param touchY y of finger down point
+     * @param eventTimeNanos event time in nanoseconds, it is used for touch
+     *                       prediction and should be in the same time base
+     *                       with moving events
+     */
+    public void onFingerDown(float touchX, float touchY, long eventTimeNanos) {
+        if (mPredictor != null) {
+            mPredictor.reset(touchX, touchY, eventTimeNanos);
+        }
+
         // covert to OpenGL coordinate
         touchX = mViewRect.toOpenGLX(touchX);
         touchY = mViewRect.toOpenGLY(touchY);
 
+        // finger is down while animating, don't break animation until finger
+        // is moved to grab page or is up to queue the next flip
+        if (isAnimating()) {
+            mIsInterrupting = true;
+            mStartTouchP.set(touchX, touchY);
+            return;
+        }
+
+        mIsInterrupting = false;
+        mIsGrabbed = false;
+        mHasQueuedFlip = false;
+        beginFlip(touchX, touchY);
+    }
+
+    /**
+     * Begin to flip if touch point is on page
+     *
+     * @param touchX x of touch point in OpenGL coordinate
+     * @param touchY y of touch point in OpenGL coordinate
+     */
+    private void beginFlip(float touchX, float touchY) {
         // check if touch point is contained in page?
         boolean isContained = false;
         if (mPages[FIRST_PAGE].contains(touchX, touchY)) {
@@ -636,9 +968,52 @@ public class PageFlip {
      *         False means the movement should be ignored.
      */
     public boolean onFingerMove(float touchX, float touchY) {
+        return onFingerMove(touchX, touchY, mClock.nanoTime());
+    }
+
+    /**
+     * Handle finger moving event with event time
+     * <p>If touch prediction is enabled, page is curled with the predicted
+     * touch point</p>
+     * <p>It should be called in OpenGL thread, touch target is only recorded
+     * here and is read by the next {@link #drawFlipFrame()}</p>
+     *
+     * @param touchX x of finger moving point
+     * @param touchY y of finger moving point
+     * @param eventTimeNanos event time in nanoseconds
+     * @return true if moving will trigger to draw a new frame for page flip,
+     *         False means the movement should be ignored.
+     */
+    public boolean onFingerMove(float touchX, float touchY,
+                                long eventTimeNanos) {
+        if (mPredictor != null) {
+            mPredictor.addSample(touchX, touchY, eventTimeNanos);
+            mPredictor.predict(eventTimeNanos + mPredictionNanos, mPredictedP);
+            touchX = mPredictedP[0];
+            touchY = mPredictedP[1];
+        }
+
         touchX = mViewRect.toOpenGLX(touchX);
         touchY = mViewRect.toOpenGLY(touchY);
 
+        // finger is down while animating
+        if (mIsInterrupting) {
+            // animation is ended before finger moves, begin a new flip from
+            // the down point
+            if (!isAnimating()) {
+                mIsInterrupting = false;
+                beginFlip(mStartTouchP.x, mStartTouchP.y);
+            }
+            // grab fold page if finger is moved far enough
+            else if (Math.abs(touchX - mStartTouchP.x) >
+                     mViewRect.width * 0.05f) {
+                grabAnimatingPage(touchX, touchY);
+            }
+            else {
+                return false;
+            }
+        }
+
         // compute moving distance (dx, dy)
         float dy = (touchY - mStartTouchP.y);
         float dx = (touchX - mStartTouchP.x);
@@ -647,29 +1022,17 @@ public class PageFlip {
         final GLPoint originP = page.originP;
         final GLPoint diagonalP = page.diagonalP;
 
+        // is origin point changed in this moving?
+        boolean isOriginChanged = false;
+
         // begin to move
         if (mFlipState == PageFlipState.BEGIN_FLIP &&
             (Math.abs(dx) > mViewRect.width * 0.05f)) {
             // set OriginP and DiagonalP points
             page.setOriginAndDiagonalPoints(mPages[SECOND_PAGE] != null, dy);
+            isOriginChanged = true;
 
-            // compute max degree between X axis and line from TouchP to OriginP
-            // and max degree between X axis and line from TouchP to
-            // (OriginP.x, DiagonalP.Y)
-            float y2o = Math.abs(mStartTouchP.y - originP.y);
-            float y2d = Math.abs(mStartTouchP.y - diagonalP.y);
-            mMaxT2OAngleTan = computeTanOfCurlAngle(y2o);
-            mMaxT2DAngleTan = computeTanOfCurlAngle(y2d);
-
-            // moving at the top and bottom screen have different tan value of
-            // angle
-            if ((originP.y < 0 && page.right > 0) ||
-                (originP.y > 0 && page.right <= 0)) {
-                mMaxT2OAngleTan = -mMaxT2OAngleTan;
-            }
-            else {
-                mMaxT2DAngleTan = -mMaxT2DAngleTan;
-            }
+            computeMaxTanOfCurlAngles(mStartTouchP.y);
 
             // determine if it is moving backward or forward
             if (mPages[SECOND_PAGE] == null &&
@@ -693,6 +1056,7 @@ public class PageFlip {
             mFlipState == PageFlipState.RESTORE_FLIP) {
 
             // check if page is flipping vertically
+            final boolean wasVertical = mIsVertical;
             mIsVertical = Math.abs(dy) <= 1f;
 
             // multiply a factor to make sure the touch point is always head of
@@ -712,6 +1076,7 @@ public class PageFlip {
                 mMaxT2DAngleTan = mMaxT2OAngleTan;
                 mMaxT2OAngleTan = t;
                 page.invertYOfOriginPoint();
+                isOriginChanged = true;
             }
 
             // compute new TouchP.y
@@ -746,14 +1111,26 @@ public class PageFlip {
                 }
             }
 
+            // ignore sub-pixel moving, the current mesh is reused
+            final float x = dx + originP.x;
+            final float y = dy + originP.y;
+            if (!isOriginChanged &&
+                wasVertical == mIsVertical &&
+                Math.abs(x - mTouchP.x) < SUB_PIXEL_THRESHOLD &&
+                Math.abs(y - mTouchP.y) < SUB_PIXEL_THRESHOLD) {
+                return false;
+            }
+
             // set touchP(x, y) and middleP(x, y)
             mLastTouchP.set(touchX, touchY);
-            mTouchP.set(dx + originP.x, dy + originP.y);
+            mTouchP.set(x, y);
             mMiddleP.x = (mTouchP.x + originP.x) * 0.5f;
             mMiddleP.y = (mTouchP.y + originP.y) * 0.5f;
 
-            // continue to compute points to drawing flip
-            computeVertexesAndBuildPage();
+            // only update touch target here, geometry is rebuilt once in
+            // drawFlipFrame() no matter how many moving events are coming
+            // between two frames
+            mIsGeometryDirty = true;
             return true;
         }
 
@@ -769,9 +1146,60 @@ public class PageFlip {
      * @return true if animation is started or animation is not triggered
      */
     public boolean onFingerUp(float touchX, float touchY, int duration) {
+        return onFingerUp(touchX, touchY, duration, 0, 0);
+    }
+
+    /**
+     * Handle finger up event with finger velocity
+     * <p>
+     * A fast fling completes the flip even from a small drag, or restores the
+     * page if it is flung back. Animation duration is scaled with remaining
+     * distance and speed of finger, the given duration is the maximum one for
+     * flipping the whole page
+     * </p>
+     *
+     * @param touchX x of finger moving point
+     * @param touchY y of finger moving point
+     * @param duration maximum millisecond for page flip animation
+     * @param velocityX x velocity of finger in pixels per second, it can be
+     *                  computed by {@link android.view.VelocityTracker}
+     * @param velocityY y velocity of finger in pixels per second
+     * @return true if animation is started or animation is not triggered
+     */
+    public boolean onFingerUp(float touchX, float touchY, int duration,
+                              float velocityX, float velocityY) {
         touchX = mViewRect.toOpenGLX(touchX);
         touchY = mViewRect.toOpenGLY(touchY);
 
+        // finger is up without grabbing page while animating
+        if (mIsInterrupting) {
+            mIsInterrupting = false;
+
+            // animation is ended before finger up, handle it as a new click
+            if (!isAnimating()) {
+                beginFlip(mStartTouchP.x, mStartTouchP.y);
+            }
+            // queue a clicking flip, it is started as soon as the current
+            // animation is ended
+            else if (mIsClickToFlip &&
+                     Math.abs(touchX - mStartTouchP.x) < 2) {
+                mQueuedFlipX = touchX;
+                mQueuedFlipY = touchY;
+                mQueuedFlipDuration = duration;
+                mHasQueuedFlip = true;
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+        // don't restart the running animation
+        else if (isAnimating()) {
+            return false;
+        }
+
+        mIsGrabbed = false;
+
         final Page page = mPages[FIRST_PAGE];
         final GLPoint originP = page.originP;
         final GLPoint diagonalP = page.diagonalP;
@@ -779,10 +1207,19 @@ public class PageFlip {
         Point start = new Point((int)mTouchP.x, (int)mTouchP.y);
         Point end = new Point(0, 0);
 
+        // finger velocity along forward flip direction which is from origin
+        // point to diagonal point, X axis has the same direction in screen and
+        // OpenGL coordinate
+        final float forwardV = diagonalP.x > originP.x ? velocityX : -velocityX;
+        final boolean isForwardFling = forwardV > mMinFlingVelocity;
+        final boolean isBackwardFling = forwardV < -mMinFlingVelocity;
+
         // forward flipping
         if (mFlipState == PageFlipState.FORWARD_FLIP) {
-            // can't going forward, restore current page
-            if (page.isXInRange(touchX, WIDTH_RATIO_OF_RESTORE_FLIP)) {
+            // can't going forward or flung back, restore current page
+            if (isBackwardFling ||
+                (!isForwardFling &&
+                 page.isXInRange(touchX, WIDTH_RATIO_OF_RESTORE_FLIP))) {
                 end.x = (int)originP.x;
                 mFlipState = PageFlipState.RESTORE_FLIP;
             }
@@ -796,8 +1233,10 @@ public class PageFlip {
         }
         // backward flipping
         else if (mFlipState == PageFlipState.BACKWARD_FLIP) {
-            // if not over middle x, change from backward to forward to restore
-            if (!page.isXInRange(touchX, 0.5f)) {
+            // if not over middle x or flung back, change from backward to
+            // forward to restore
+            if (isForwardFling ||
+                (!isBackwardFling && !page.isXInRange(touchX, 0.5f))) {
                 mFlipState = PageFlipState.FORWARD_FLIP;
                 end.set((int)(diagonalP.x - page.width), (int)originP.y);
             }
@@ -825,13 +1264,41 @@ public class PageFlip {
             mFlipState == PageFlipState.RESTORE_FLIP) {
             mScroller.startScroll(start.x, start.y,
                                   end.x - start.x, end.y - start.y,
-                                  duration);
+                                  computeFlipDuration(start, end, duration,
+                                                      velocityX));
             return true;
         }
 
         return false;
     }
 
+    /**
+     * Compute duration of flip animation by remaining distance and speed
+     *
+     * @param start start point of animation
+     * @param end end point of animation
+     * @param duration maximum duration for flipping the whole page
+     * @param velocityX x velocity of finger in pixels per second
+     * @return duration in milliseconds
+     */
+    private int computeFlipDuration(Point start, Point end, int duration,
+                                    float velocityX) {
+        // scale duration with distance, the longest way is flipping the whole
+        // page from one side to another
+        final float distance = Math.abs(end.x - start.x);
+        final float maxDistance = 2 * mPages[FIRST_PAGE].width;
+        float d = duration * Math.min(1f, distance / maxDistance);
+
+        // keep up with finger if it is flung to the end
+        final float speed = (end.x - start.x) * velocityX > 0 ?
+                            Math.abs(velocityX) : 0;
+        if (speed > mMinFlingVelocity) {
+            d = Math.min(d, FLING_DURATION_FACTOR * 1000 * distance / speed);
+        }
+
+        return Math.min(duration, Math.max(MIN_FLIP_DURATION, (int)d));
+    }
+
     /**
      * Check finger point to see if it can trigger a flip animation
      *
@@ -841,6 +1308,8 @@ public class PageFlip {
      */
     public boolean canAnimate(float touchX, float touchY) {
         return (mFlipState == PageFlipState.FORWARD_FLIP &&
+                !isAnimating() &&
+                !mIsInterrupting &&
                 !mPages[FIRST_PAGE].contains(mViewRect.toOpenGLX(touchX),
                                              mViewRect.toOpenGLY(touchY)));
     }
@@ -912,11 +1381,31 @@ public class PageFlip {
     }
 
     /**
-     * Compute animating and check if it can continue
+     * Compute animating with time of animation clock and check if it can
+     * continue
      *
      * @return true animating is continue or it is stopped
      */
     public boolean animating() {
+        return animating(mClock.nanoTime());
+    }
+
+    /**
+     * Compute animating at given frame time and check if it can continue
+     * <p>Frame time should be the presentation time of frame, for example,
+     * vsync time from {@link android.view.Choreographer}, animation position
+     * is only decided by frame time and is independent of frame rate</p>
+     *
+     * @param frameTimeNanos frame time in nanoseconds, it must be in the same
+     *                       time base for the whole animation
+     * @return true animating is continue or it is stopped
+     */
+    public boolean animating(long frameTimeNanos) {
+        // finger has taken over the fold page, flip isn't ended
+        if (mIsGrabbed) {
+            return false;
+        }
+
         final Page page = mPages[FIRST_PAGE];
         final GLPoint originP = page.originP;
         final GLPoint diagonalP = page.diagonalP;
@@ -924,8 +1413,12 @@ public class PageFlip {
         // is to end animating?
         boolean isAnimating = !mScroller.isFinished();
         if (isAnimating) {
+            // build pending geometry of the last moving since animation
+            // continues with its slope
+            buildGeometryIfDirty();
+
             // get new (x, y)
-            mScroller.computeScrollOffset();
+            mScroller.computeScrollOffset(frameTimeNanos);
             mTouchP.set(mScroller.getCurrX(), mScroller.getCurrY());
 
             // for backward and restore flip, compute x to check if it can
@@ -998,6 +1491,12 @@ public class PageFlip {
         // animation is stopped
         if (!isAnimating) {
             abortAnimating();
+
+            // the ended flip has been handled by listener, start the next
+            // riffle or queued one without an idle frame
+            if (startNextFlip()) {
+                return animating(frameTimeNanos);
+            }
         }
         // continue animation and compute vertexes
         else if (mIsVertical) {
@@ -1019,8 +1518,54 @@ public class PageFlip {
         return !mScroller.isFinished();
     }
 
+    /**
+     * Start riffle to flip through multiple pages rapidly
+     * <p>
+     * Pages are flipped one after another by clicking flips without idle
+     * frame between them. Every flip except the last one is a riffle flip
+     * which is drawn with a coarse mesh and without shadows, the render
+     * should use low resolution preview textures for it by checking
+     * {@link #isRiffling()}. The last flip lands on target page with normal
+     * quality.
+     * </p>
+     * <p>The listener is asked and notified for every flip as usual, riffle is
+     * stopped if a page can't be flipped or finger grabs the fold page</p>
+     *
+     * @param count page count to flip, positive value is for forward and
+     *              negative value is for backward
+     * @param duration millisecond for the whole riffle
+     * @return true if riffle is started
+     */
+    public boolean startRiffle(int count, int duration) {
+        if (count == 0 || isAnimating() || isStartedFlip()) {
+            return false;
+        }
+
+        // the last flip takes double time
+        final int n = Math.abs(count);
+        mIsRiffleForward = count > 0;
+        mRiffleFlipDuration = Math.max(MIN_FLIP_DURATION, duration / (n + 1));
+        mRiffleRemaining = n;
+        mHasQueuedFlip = false;
+        return startRiffleFlip();
+    }
+
+    /**
+     * Is riffling?
+     * <p>It is true from riffle is started to the last flip is started,
+     * render should draw pages with low resolution preview textures and avoid
+     * loading full contents of skipped pages</p>
+     *
+     * @return true if current flip is a riffle flip or more riffle flips
+     *         will follow
+     */
+    public boolean isRiffling() {
+        return mIsRiffleFlip || mRiffleRemaining > 0;
+    }
+
     /**
      * Abort animating
+     * <p>The ended listener is notified if flip is ended by aborting</p>
      */
     public void abortAnimating() {
         mScroller.abortAnimation();
@@ -1033,6 +1578,13 @@ public class PageFlip {
         else if (mFlipState == PageFlipState.RESTORE_FLIP) {
             mFlipState = PageFlipState.END_WITH_RESTORE;
         }
+        else {
+            return;
+        }
+
+        if (mEndedListener != null) {
+            mEndedListener.onPageFlipEnded(mFlipState);
+        }
     }
 
     /**
@@ -1083,6 +1635,53 @@ public class PageFlip {
         return mPages[SECOND_PAGE];
     }
 
+    /**
+     * Set background layer shared by pages
+     * <p>
+     * Page textures set by
+     * {@link Page#setFirstOverlay(Bitmap, boolean, RectF)},
+     * {@link Page#setSecondOverlay(Bitmap, boolean, RectF)} and
+     * {@link Page#setBackOverlay(Bitmap, RectF)} are composited on this layer
+     * in fragment shader, so the common background is uploaded only once
+     * instead of being baked into every page texture. The layer is stretched
+     * over the whole page and should have the aspect ratio of page, an
+     * overlay only covers its own rect of page.
+     * </p>
+     * <p>It should be called in OpenGL thread and set again after surface is
+     * created</p>
+     *
+     * @param b background bitmap, null to remove background layer
+     */
+    public void setBackgroundLayer(Bitmap b) {
+        if (b == null) {
+            if (mBackgroundTextureID != -1) {
+                glDeleteTextures(1, new int[] {mBackgroundTextureID}, 0);
+                mBackgroundTextureID = -1;
+            }
+        }
+        else {
+            if (mBackgroundTextureID == -1) {
+                int textureIDs[] = new int[1];
+                glGenTextures(1, textureIDs, 0);
+                mBackgroundTextureID = textureIDs[0];
+            }
+
+            glActiveTexture(GL_TEXTURE0);
+            glBindTexture(GL_TEXTURE_2D, mBackgroundTextureID);
+            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+            glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            GLUtils.texImage2D(GL_TEXTURE_2D, 0, b, 0);
+            mBackgroundColor = PageFlipUtils.computeAverageColor(b, 30);
+        }
+
+        for (Page page : mPages) {
+            if (page != null) {
+                page.setBackgroundLayer(mBackgroundTextureID,
+                                        mBackgroundColor);
+            }
+        }
+    }
+
     /**
      * Delete unused textures
      */
@@ -1095,50 +1694,203 @@ public class PageFlip {
 
     /**
      * Draw flipping frame
+     * <p>
+     * Geometry is drawn from near to far with depth test: the fold back is
+     * always on top of pages, so it is drawn first and fragments of pages
+     * covered by it are rejected by depth test before they are shaded. The
+     * front page is clipped along fold line by
+     * {@link Page#buildVertexesOfPageWhenSlope}, its unfold part and the
+     * revealed part of the second texture don't overlap. Only blended
+     * shadows are drawn on shaded pixels. Use
+     * {@link #enableOverdrawCounter(boolean)} to verify it.
+     * </p>
      */
     public void drawFlipFrame() {
+        // rebuild geometry if touch point is moved since last frame
+        buildGeometryIfDirty();
+
+        // count overdraw with the same geometry before drawing frame
+        if (mIsOverdrawCounterEnabled) {
+            countOverdraw();
+        }
+        else {
+            mOverdrawCounter = null;
+        }
+
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
         final boolean hasSecondPage = mPages[SECOND_PAGE] != null;
+        beginFrame();
 
+        // programs are shared with other instances, always set matrix of
+        // this instance after using program
         // 1. draw back of fold page
-        glUseProgram(mFoldBackVertexProgram.mProgramRef);
+        // it is the nearest geometry and must be drawn first, the covered
+        // pixels of pages beneath it are rejected by depth test afterwards
+        // use unmasked program variant if there is no mask to be mixed
+        final VertexProgramVariants foldBackPrograms =
+                mFoldBackVertexes.isMasked(hasSecondPage) ?
+                mFoldBackPrograms : mUnmaskedFoldBackPrograms;
+        foldBackPrograms.begin(mMVPMatrix);
         glActiveTexture(GL_TEXTURE0);
-        mFoldBackVertexes.draw(mFoldBackVertexProgram,
+        mFoldBackVertexes.draw(foldBackPrograms,
                                mPages[FIRST_PAGE],
                                hasSecondPage,
-                               mGradientShadowTextureID);
+                               mResources.mGradientShadowTextureID);
 
         // 2. draw unfold page and front of fold page
-        glUseProgram(mVertexProgram.mProgramRef);
+        mVertexPrograms.begin(mMVPMatrix);
         glActiveTexture(GL_TEXTURE0);
-        mPages[FIRST_PAGE].drawFrontPage(mVertexProgram,
+        mPages[FIRST_PAGE].drawFrontPage(mVertexPrograms,
                                          mFoldFrontVertexes);
         if (hasSecondPage) {
-            mPages[SECOND_PAGE].drawFullPage(mVertexProgram, true);
+            mPages[SECOND_PAGE].drawFullPage(mVertexPrograms, true);
         }
 
         // 3. draw edge and base shadow of fold parts
+        // riffle flip is too fast to see shadows, skip them
+        if (mIsRiffleFlip) {
+            return;
+        }
+
         glUseProgram(mShadowVertexProgram.mProgramRef);
+        glUniformMatrix4fv(mShadowVertexProgram.mMVPMatrixLoc, 1, false,
+                           mMVPMatrix, 0);
         mFoldBaseShadow.draw(mShadowVertexProgram);
         mFoldEdgesShadow.draw(mShadowVertexProgram);
     }
 
+    /**
+     * Count overdraw of flip frame
+     * <p>Geometry is drawn in the same order and with the same depth test as
+     * {@link #drawFlipFrame()}, the frame is cleared and redrawn after
+     * counting</p>
+     */
+    private void countOverdraw() {
+        final OverdrawProgram program;
+        try {
+            program = mResources.getOverdrawProgram(mContext);
+        }
+        catch (PageFlipException e) {
+            Log.w(TAG, "Can't create overdraw program, disable counter", e);
+            mIsOverdrawCounterEnabled = false;
+            return;
+        }
+
+        if (mOverdrawCounter == null) {
+            mOverdrawCounter = new OverdrawCounter();
+        }
+
+        // 1. every shaded fragment adds one level of red channel
+        final float level = mOverdrawCounter.begin(mViewRect);
+        glUseProgram(program.mProgramRef);
+        glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false, mMVPMatrix, 0);
+        glUniform4f(program.mColorLoc, level, 0, 0, 0);
+        glUniform1f(program.mIsFixedZLoc, 0);
+
+        // 2. draw fold back, front page and the second page
+        mFoldBackVertexes.drawPositionsWith(GL_TRIANGLE_STRIP,
+                                            program.mVertexPosLoc,
+                                            0,
+                                            mFoldBackVertexes.mVertexesSize);
+        mPages[FIRST_PAGE].drawFrontPage(program, mFoldFrontVertexes);
+        if (mPages[SECOND_PAGE] != null) {
+            mPages[SECOND_PAGE].drawFullPage(program);
+        }
+
+        // 3. draw shadows with their fixed z
+        if (!mIsRiffleFlip) {
+            glUniform1f(program.mIsFixedZLoc, 1);
+            mFoldBaseShadow.draw(program);
+            mFoldEdgesShadow.draw(program);
+        }
+
+        // 4. read back counts
+        mOverdrawCounter.end();
+        final long covered = mOverdrawCounter.getCoveredPixels();
+        mOverdrawRatio = covered > 0 ?
+                         (float)mOverdrawCounter.getShadedFragments() / covered
+                         : 0;
+    }
+
     /**
      * Draw frame with full page
+     * <p>If frame cache is enabled, the cached frame is drawn directly when
+     * no page is changed since it is cached</p>
      */
     public void drawPageFrame() {
+        final Page first = mPages[FIRST_PAGE];
+        final Page second = mPages[SECOND_PAGE];
+
+        // delete cache if it is disabled
+        if (!mIsFrameCacheEnabled) {
+            if (mFrameCache != null) {
+                mFrameCache.delete();
+                mFrameCache = null;
+            }
+            drawPages();
+            return;
+        }
+
+        // 1. render pages to cache if any page is changed
+        if (mFrameCache == null) {
+            mFrameCache = new FrameCache();
+        }
+
+        if (!mFrameCache.isValid(first, second)) {
+            if (!mFrameCache.begin(mViewRect)) {
+                // framebuffer isn't supported, stop using cache
+                mIsFrameCacheEnabled = false;
+                mFrameCache.delete();
+                mFrameCache = null;
+                drawPages();
+                return;
+            }
+
+            drawPages();
+            mFrameCache.end(first, second);
+        }
+
+        // 2. draw cached frame, page textures are still visible since the
+        // frame rendering cache, don't begin a new frame for them
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        mFrameCache.draw(mVertexPrograms.begin(mMVPMatrix));
+    }
+
+    /**
+     * Draw full pages
+     */
+    private void drawPages() {
         glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-        glUseProgram(mVertexProgram.mProgramRef);
-        glUniformMatrix4fv(mVertexProgram.mMVPMatrixLoc, 1, false,
-                           VertexProgram.MVPMatrix, 0);
+        beginFrame();
+        mVertexPrograms.begin(mMVPMatrix);
         glActiveTexture(GL_TEXTURE0);
 
         // 1. draw first page
-        mPages[FIRST_PAGE].drawFullPage(mVertexProgram, true);
+        mPages[FIRST_PAGE].drawFullPage(mVertexPrograms, true);
 
         // 2. draw second page if have
         if (mPages[SECOND_PAGE] != null) {
-            mPages[SECOND_PAGE].drawFullPage(mVertexProgram, true);
+            mPages[SECOND_PAGE].drawFullPage(mVertexPrograms, true);
+        }
+    }
+
+    /**
+     * Rebuild geometry of fold page if touch point is moved since it is built
+     */
+    private void buildGeometryIfDirty() {
+        if (mIsGeometryDirty) {
+            mIsGeometryDirty = false;
+            computeVertexesAndBuildPage();
+        }
+    }
+
+    /**
+     * Start a new frame for pages to track which textures are visible
+     */
+    private void beginFrame() {
+        mPages[FIRST_PAGE].beginFrame();
+        if (mPages[SECOND_PAGE] != null) {
+            mPages[SECOND_PAGE].beginFrame();
         }
     }
 
@@ -1161,24 +1913,6 @@ public class PageFlip {
         mFoldBaseShadow.set(maxMeshCount + 2);
     }
 
-    /**
-     * Create gradient shadow texture for lighting effect
-     */
-    private void createGradientShadowTexture() {
-        int textureIDs[] = new int[1];
-        glGenTextures(1, textureIDs, 0);
-        glActiveTexture(GL_TEXTURE0);
-        mGradientShadowTextureID = textureIDs[0];
-
-        // gradient shadow texture
-        Bitmap shadow = PageFlipUtils.createGradientBitmap();
-        glBindTexture(GL_TEXTURE_2D, mGradientShadowTextureID);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
-        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        GLUtils.texImage2D(GL_TEXTURE_2D, 0, shadow, 0);
-        shadow.recycle();
-    }
-
     /**
      * Compute vertexes of page
      */
@@ -1257,8 +1991,11 @@ public class PageFlip {
 
         float tx0 = mTouchP.x;
         mFoldBackVertexes.addVertex(tx0, dY, 1, 0, cOX, cDY)
-                         .addVertex(tx0, oY, 1, 0, cOX, cOY)
-                         .toFloatBuffer();
+                         .addVertex(tx0, oY, 1, 0, cOX, cOY);
+        if (page.isTextureRotated()) {
+            mFoldBackVertexes.rotateTextureCoords(mPages[SECOND_PAGE] != null);
+        }
+        mFoldBackVertexes.toFloatBuffer();
 
         // compute shadow width
         float sw = -mFoldEdgesShadowWidth.width(mR);
@@ -1282,6 +2019,9 @@ public class PageFlip {
         // fold front
         mFoldFrontVertexes.reset();
         page.buildVertexesOfPageWhenVertical(mFoldFrontVertexes, mXFoldP1);
+        if (page.isTextureRotated()) {
+            mFoldFrontVertexes.rotateTextureCoords(false);
+        }
         mFoldFrontVertexes.toFloatBuffer();
     }
 
@@ -1704,6 +2444,9 @@ public class PageFlip {
             }
         }
 
+        if (page.isTextureRotated()) {
+            mFoldBackVertexes.rotateTextureCoords(mPages[SECOND_PAGE] != null);
+        }
         mFoldBackVertexes.toFloatBuffer();
 
         // Like above computation, the below steps are computing vertexes of
@@ -1786,6 +2529,9 @@ public class PageFlip {
         // add two vertexes to connect with the unfold front page
         page.buildVertexesOfPageWhenSlope(mFoldFrontVertexes, mXFoldP1, mYFoldP1,
                                           mKValue);
+        if (page.isTextureRotated()) {
+            mFoldFrontVertexes.rotateTextureCoords(false);
+        }
         mFoldFrontVertexes.toFloatBuffer();
 
         // compute vertexes of fold edge shadow
@@ -1850,10 +2596,17 @@ public class PageFlip {
         int len = mIsVertical ? (int)dx : (int)Math.min(dx, dy);
         mMeshCount = 0;
 
+        // riffle flip is drawn with a coarse mesh
+        final int pixelsOfMesh = mIsRiffleFlip ?
+                                 mPixelsOfMesh * RIFFLE_MESH_SCALE :
+                                 mPixelsOfMesh;
+        final int threshold = mIsRiffleFlip ? RIFFLE_MESH_COUNT_THRESHOLD :
+                                              MESH_COUNT_THRESHOLD;
+
         // make sure mesh count is greater than threshold, if less than it,
         // the page maybe is drawn unsmoothly
-        for (int i = mPixelsOfMesh;
-             i >= 1 && mMeshCount < MESH_COUNT_THRESHOLD;
+        for (int i = pixelsOfMesh;
+             i >= 1 && mMeshCount < threshold;
              i >>= 1) {
             mMeshCount = len / i;
         }
@@ -1867,6 +2620,158 @@ public class PageFlip {
         mMeshCount >>= 1;
     }
 
+    /**
+     * Compute max tan values of curling angles with touch y
+     * <p>They are max degree between X axis and line from TouchP to OriginP
+     * and max degree between X axis and line from TouchP to
+     * (OriginP.x, DiagonalP.Y)</p>
+     *
+     * @param touchY y of touch point
+     */
+    private void computeMaxTanOfCurlAngles(float touchY) {
+        final Page page = mPages[FIRST_PAGE];
+        final GLPoint originP = page.originP;
+        final GLPoint diagonalP = page.diagonalP;
+
+        float y2o = Math.abs(touchY - originP.y);
+        float y2d = Math.abs(touchY - diagonalP.y);
+        mMaxT2OAngleTan = computeTanOfCurlAngle(y2o);
+        mMaxT2DAngleTan = computeTanOfCurlAngle(y2d);
+
+        // moving at the top and bottom screen have different tan value of
+        // angle
+        if ((originP.y < 0 && page.right > 0) ||
+            (originP.y > 0 && page.right <= 0)) {
+            mMaxT2OAngleTan = -mMaxT2OAngleTan;
+        }
+        else {
+            mMaxT2DAngleTan = -mMaxT2DAngleTan;
+        }
+    }
+
+    /**
+     * Stop animation and let finger take over the fold page
+     * <p>Start point is moved so that the current touch point is mapped to
+     * finger point, the fold page continues from where it is instead of
+     * jumping to finger</p>
+     *
+     * @param touchX x of finger point in OpenGL coordinate
+     * @param touchY y of finger point in OpenGL coordinate
+     */
+    private void grabAnimatingPage(float touchX, float touchY) {
+        final GLPoint originP = mPages[FIRST_PAGE].originP;
+
+        // stop scroller without ending flip
+        mScroller.abortAnimation();
+        mIsGrabbed = true;
+        mIsInterrupting = false;
+        mHasQueuedFlip = false;
+
+        // finger takes over riffle, continue with normal quality
+        mRiffleRemaining = 0;
+        if (mIsRiffleFlip) {
+            mIsRiffleFlip = false;
+            mIsGeometryDirty = true;
+        }
+
+        // restoring page is moving toward origin point like forward flip
+        if (mFlipState == PageFlipState.RESTORE_FLIP) {
+            mFlipState = PageFlipState.FORWARD_FLIP;
+        }
+
+        // curling angles are not computed for a clicking flip
+        if (mMaxT2OAngleTan == 0 && mMaxT2DAngleTan == 0) {
+            computeMaxTanOfCurlAngles(touchY);
+        }
+
+        // see onFingerMove() for the factor of dx
+        final float factor = mFlipState == PageFlipState.FORWARD_FLIP ?
+                             1.2f : 1.1f;
+        mStartTouchP.set(touchX - (mTouchP.x - originP.x) / factor,
+                         touchY - (mTouchP.y - originP.y));
+        mLastTouchP.set(touchX, touchY);
+    }
+
+    /**
+     * Start the next flip when the current animation is ended
+     * <p>Riffle flips are started before the queued clicking flip</p>
+     *
+     * @return true if flip animation is started
+     */
+    private boolean startNextFlip() {
+        if (mRiffleRemaining > 0) {
+            return startRiffleFlip();
+        }
+
+        mIsRiffleFlip = false;
+        if (mHasQueuedFlip) {
+            mHasQueuedFlip = false;
+            return startClickingFlip(mQueuedFlipX, mQueuedFlipY,
+                                     mQueuedFlipDuration);
+        }
+
+        return false;
+    }
+
+    /**
+     * Start the next flip of riffle
+     * <p>The last flip which lands on target page is drawn in normal quality
+     * and takes double time to settle down</p>
+     *
+     * @return true if flip animation is started
+     */
+    private boolean startRiffleFlip() {
+        mRiffleRemaining--;
+        mIsRiffleFlip = mRiffleRemaining > 0;
+        final int duration = mIsRiffleFlip ? mRiffleFlipDuration
+                                           : mRiffleFlipDuration * 2;
+
+        // click at the bottom corner of flipping side
+        final float x = mIsRiffleForward ? mViewRect.right - 1
+                                         : mViewRect.left + 1;
+        if (startClickingFlip(x, mViewRect.bottom * 0.5f, duration)) {
+            return true;
+        }
+
+        // can't flip any more, for example: the last page is reached
+        mRiffleRemaining = 0;
+        mIsRiffleFlip = false;
+        return false;
+    }
+
+    /**
+     * Start a clicking flip animation at given point
+     *
+     * @param x x of clicking point in OpenGL coordinate
+     * @param y y of clicking point in OpenGL coordinate
+     * @param duration maximum millisecond for page flip animation
+     * @return true if flip animation is started
+     */
+    private boolean startClickingFlip(float x, float y, int duration) {
+        beginFlip(x, y);
+        if (mFlipState != PageFlipState.BEGIN_FLIP) {
+            return false;
+        }
+
+        mIsVertical = false;
+        mFlipState = PageFlipState.END_FLIP;
+        mPages[FIRST_PAGE].setOriginAndDiagonalPoints(
+                mPages[SECOND_PAGE] != null, -y);
+
+        Point start = new Point((int)mTouchP.x, (int)mTouchP.y);
+        Point end = new Point(0, 0);
+        computeScrollPointsForClickingFlip(x, start, end);
+        if (mFlipState == PageFlipState.FORWARD_FLIP ||
+            mFlipState == PageFlipState.BACKWARD_FLIP) {
+            mScroller.startScroll(start.x, start.y,
+                                  end.x - start.x, end.y - start.y,
+                                  computeFlipDuration(start, end, duration, 0));
+            return true;
+        }
+
+        return false;
+    }
+
     /**
      * Compute tan value of curling angle
      *
@@ -18,10 +18,15 @@ package com.eschao.android.widget.pageflip;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.LinearGradient;
 import android.graphics.Paint;
 import android.graphics.Shader;
 
+import static android.opengl.GLES20.GL_EXTENSIONS;
+import static android.opengl.GLES20.glGetString;
+
 /**
  * Utilities of page flip
  *
@@ -29,6 +34,9 @@ import android.graphics.Shader;
  */
 public class PageFlipUtils {
 
+    // is mipmap of NPOT texture supported? null means unknown
+    private static Boolean sIsNPOTMipmapSupported = null;
+
     /**
      * Compute average color for given bitmap
      *
@@ -104,6 +112,81 @@ public class PageFlipUtils {
         return Color.argb(alpha, red, green, blue);
     }
 
+    /**
+     * Compute luminance of given color
+     *
+     * @param color color value
+     * @return luminance in [0 .. 255]
+     */
+    public static int computeLuminance(int color) {
+        return (int)(0.299f * Color.red(color) +
+                     0.587f * Color.green(color) +
+                     0.114f * Color.blue(color));
+    }
+
+    /**
+     * Convert bitmap to a new bitmap with given config
+     * <p>If target config is ALPHA_8, the luminance of every pixel is saved
+     * in alpha channel</p>
+     *
+     * @param bitmap source bitmap
+     * @param config target config: ARGB_8888, RGB_565 or ALPHA_8
+     * @return a new bitmap or the source bitmap if it has the same config
+     */
+    public static Bitmap convertBitmap(Bitmap bitmap, Bitmap.Config config) {
+        if (bitmap.getConfig() == config) {
+            return bitmap;
+        }
+
+        if (config != Bitmap.Config.ALPHA_8) {
+            return bitmap.copy(config, false);
+        }
+
+        // map luminance to alpha channel
+        ColorMatrix matrix = new ColorMatrix(new float[] {
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0.299f, 0.587f, 0.114f, 0, 0});
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(matrix));
+        Bitmap alpha = Bitmap.createBitmap(bitmap.getWidth(),
+                                           bitmap.getHeight(),
+                                           Bitmap.Config.ALPHA_8);
+        new Canvas(alpha).drawBitmap(bitmap, 0, 0, paint);
+        return alpha;
+    }
+
+    /**
+     * Can mipmaps be generated for texture of given bitmap?
+     * <p>OpenGL ES 2.0 only supports mipmaps of power-of-two textures unless
+     * GL_OES_texture_npot extension is supported. It should be called in
+     * OpenGL thread</p>
+     *
+     * @param bitmap bitmap object
+     * @return true if mipmaps can be generated
+     */
+    public static boolean canGenerateMipmap(Bitmap bitmap) {
+        if (isPowerOfTwo(bitmap.getWidth()) &&
+            isPowerOfTwo(bitmap.getHeight())) {
+            return true;
+        }
+
+        if (sIsNPOTMipmapSupported == null) {
+            String extensions = glGetString(GL_EXTENSIONS);
+            sIsNPOTMipmapSupported = extensions != null &&
+                                     extensions.contains("GL_OES_texture_npot");
+        }
+        return sIsNPOTMipmapSupported;
+    }
+
+    /**
+     * Is given value power of two?
+     */
+    private static boolean isPowerOfTwo(int value) {
+        return value > 0 && (value & (value - 1)) == 0;
+    }
+
     /**
      * Create gradient bitmap for drawing lighting effect on back of fold page
      *
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static android.opengl.GLES20.GL_LINK_STATUS;
+import static android.opengl.GLES20.GL_RENDERER;
+import static android.opengl.GLES20.GL_VENDOR;
+import static android.opengl.GLES20.GL_VERSION;
+import static android.opengl.GLES20.glGetIntegerv;
+import static android.opengl.GLES20.glGetProgramiv;
+import static android.opengl.GLES20.glGetString;
+
+/**
+ * Disk cache of linked shader program binaries
+ * <p>
+ * Compiling and linking shaders is slow on some drivers and it has to be
+ * done every time an EGL context is created. The cache saves binary of a
+ * linked program in app cache directory and reloads it next time instead of
+ * compiling shader scripts.
+ * </p>
+ * <p>
+ * Program binary is only supported by OpenGL ES 3.0 on Android API 18 and
+ * above, the cache is disabled otherwise. A cached binary is only valid for
+ * the driver which created it, so it is stored with driver description and
+ * dropped if driver is changed, for example: system updating. Support and
+ * driver are queried from the current context every time since programs
+ * could be created in different contexts, even with different versions.
+ * </p>
+ * <pre>
+ * +-------+---------+--------+--------+--------+-------------+--------...
+ * | magic | version | driver | key    | format | binary size | binary
+ * +-------+---------+--------+--------+--------+-------------+--------...
+ * </pre>
+ *
+ * @author eschao
+ */
+
+public final class ProgramBinaryCache {
+
+    private final static String TAG = "ProgramBinaryCache";
+
+    private final static int MAGIC = 0x50474250; // PGBP
+    private final static int VERSION = 1;
+    private final static String DIR_NAME = "pageflip_programs";
+    private final static String SUFFIX = ".bin";
+
+    // is cache enabled by user?
+    private static boolean sIsEnabled = true;
+
+    private ProgramBinaryCache() {
+    }
+
+    /**
+     * Enable/Disable program binary cache
+     *
+     * @param enable true if enable
+     */
+    public static synchronized void setEnabled(boolean enable) {
+        sIsEnabled = enable;
+    }
+
+    /**
+     * Is program binary cache enabled?
+     *
+     * @return true if enabled
+     */
+    public static synchronized boolean isEnabled() {
+        return sIsEnabled;
+    }
+
+    /**
+     * Delete all cached program binaries
+     *
+     * @param context Android context
+     */
+    public static synchronized void clear(Context context) {
+        File[] files = getDir(context).listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Load cached binary to given program
+     * <p>It should be called in OpenGL thread</p>
+     *
+     * @param context Android context
+     * @param key key of program, it should be changed with shader scripts
+     * @param program program created by glCreateProgram
+     * @return true if binary is loaded and program is linked successfully
+     */
+    static synchronized boolean load(Context context, String key,
+                                     int program) {
+        final String driver = getDriver();
+        if (driver == null) {
+            return false;
+        }
+
+        File file = getFile(context, key);
+        if (!file.exists()) {
+            return false;
+        }
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+
+            // check header, driver and key
+            if (in.readInt() != MAGIC ||
+                in.readInt() != VERSION ||
+                !driver.equals(in.readUTF()) ||
+                !key.equals(in.readUTF())) {
+                throw new IOException("Outdated program binary: " + file);
+            }
+
+            final int format = in.readInt();
+            final int size = in.readInt();
+            if (size <= 0 || size > file.length()) {
+                throw new IOException("Corrupted program binary: " + file);
+            }
+
+            byte[] bytes = new byte[size];
+            in.readFully(bytes);
+            ByteBuffer binary = ByteBuffer.allocateDirect(size)
+                                          .order(ByteOrder.nativeOrder());
+            binary.put(bytes).position(0);
+            if (!loadBinary(program, format, binary, size)) {
+                throw new IOException("Rejected program binary: " + file);
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            return true;
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Failed to load program binary: " + key, e);
+            file.delete();
+            return false;
+        }
+        finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Save binary of a linked program
+     * <p>It should be called in OpenGL thread</p>
+     *
+     * @param context Android context
+     * @param key key of program, it should be changed with shader scripts
+     * @param program linked program
+     */
+    static synchronized void save(Context context, String key, int program) {
+        final String driver = getDriver();
+        if (driver == null) {
+            return;
+        }
+
+        final int[] format = new int[1];
+        ByteBuffer binary = getBinary(program, format);
+        if (binary == null) {
+            return;
+        }
+
+        // write to a temporary file and rename it to avoid a half written
+        // file is read next time
+        File dir = getDir(context);
+        if (!dir.exists() && !dir.mkdirs()) {
+            Log.w(TAG, "Can't create cache directory: " + dir);
+            return;
+        }
+
+        File tmp = new File(dir, key + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmp)));
+            byte[] bytes = new byte[binary.remaining()];
+            binary.get(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(driver);
+            out.writeUTF(key);
+            out.writeInt(format[0]);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Failed to save program binary: " + key, e);
+            tmp.delete();
+            return;
+        }
+        finally {
+            close(out);
+        }
+
+        if (!tmp.renameTo(getFile(context, key))) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Hint driver to keep binary of program retrievable
+     * <p>Some drivers only give binary of a program which is linked with
+     * the hint, it should be called in OpenGL thread before linking</p>
+     *
+     * @param program program created by glCreateProgram
+     */
+    static synchronized void prepareLink(int program) {
+        if (getDriver() != null) {
+            setRetrievableHint(program);
+        }
+    }
+
+    /**
+     * Get driver description of current context if cache is available
+     * <p>It is queried every time instead of being cached since the current
+     * context could be a different one with a different ES version</p>
+     *
+     * @return driver description or null if cache is disabled or not
+     *         supported by current context
+     */
+    private static String getDriver() {
+        if (!sIsEnabled || Build.VERSION.SDK_INT < 18) {
+            return null;
+        }
+
+        // ES 3.0 API can only be called in an ES 3.x context
+        final String version = glGetString(GL_VERSION);
+        if (version == null || !version.startsWith("OpenGL ES 3") ||
+            getNumBinaryFormats() <= 0) {
+            return null;
+        }
+
+        return glGetString(GL_VENDOR) + "|" + glGetString(GL_RENDERER) + "|" +
+               version;
+    }
+
+    /**
+     * Set GL_PROGRAM_BINARY_RETRIEVABLE_HINT of program
+     */
+    @TargetApi(18)
+    private static void setRetrievableHint(int program) {
+        GLES30.glProgramParameteri(program,
+                                   GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT,
+                                   GLES30.GL_TRUE);
+    }
+
+    /**
+     * Get number of program binary formats supported by driver
+     */
+    @TargetApi(18)
+    private static int getNumBinaryFormats() {
+        int[] num = new int[1];
+        glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, num, 0);
+        return num[0];
+    }
+
+    /**
+     * Load binary to program and check its link status
+     */
+    @TargetApi(18)
+    private static boolean loadBinary(int program, int format,
+                                      ByteBuffer binary, int size) {
+        GLES30.glProgramBinary(program, format, binary, size);
+        int[] result = new int[1];
+        glGetProgramiv(program, GL_LINK_STATUS, result, 0);
+        return result[0] != 0;
+    }
+
+    /**
+     * Get binary of linked program
+     *
+     * @param program linked program
+     * @param format array to return binary format
+     * @return binary or null if driver doesn't give it
+     */
+    @TargetApi(18)
+    private static ByteBuffer getBinary(int program, int[] format) {
+        int[] size = new int[1];
+        glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, size, 0);
+        if (size[0] <= 0) {
+            return null;
+        }
+
+        ByteBuffer binary = ByteBuffer.allocateDirect(size[0])
+                                      .order(ByteOrder.nativeOrder());
+        IntBuffer length = IntBuffer.allocate(1);
+        IntBuffer binaryFormat = IntBuffer.allocate(1);
+        GLES30.glGetProgramBinary(program, size[0], length, binaryFormat,
+                                  binary);
+        if (length.get(0) <= 0) {
+            return null;
+        }
+
+        binary.position(0).limit(length.get(0));
+        format[0] = binaryFormat.get(0);
+        return binary;
+    }
+
+    /**
+     * Get cache directory
+     */
+    private static File getDir(Context context) {
+        return new File(context.getCacheDir(), DIR_NAME);
+    }
+
+    /**
+     * Get cache file of given key
+     */
+    private static File getFile(Context context, String key) {
+        return new File(getDir(context), key + SUFFIX);
+    }
+
+    /**
+     * Close stream quietly
+     */
+    private static void close(Closeable c) {
+        try {
+            if (c != null) {
+                c.close();
+            }
+        }
+        catch (IOException e) {
+        }
+    }
+}
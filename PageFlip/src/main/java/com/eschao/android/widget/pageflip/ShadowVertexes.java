@@ -31,7 +31,6 @@ import static android.opengl.GLES20.glDrawArrays;
 import static android.opengl.GLES20.glEnable;
 import static android.opengl.GLES20.glEnableVertexAttribArray;
 import static android.opengl.GLES20.glUniform1f;
-import static android.opengl.GLES20.glUniformMatrix4fv;
 import static android.opengl.GLES20.glVertexAttribPointer;
 
 /**
@@ -267,9 +266,6 @@ class ShadowVertexes {
      */
     public void draw(ShadowVertexProgram program) {
         if (mVertexesSize > 0) {
-            glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false,
-                               VertexProgram.MVPMatrix, 0);
-
             glUniform1f(program.mVertexZLoc, vertexZ);
 
             // disable texture, and enable blend
@@ -286,4 +282,20 @@ class ShadowVertexes {
             glDisable(GL_BLEND);
         }
     }
+
+    /**
+     * Draw the same geometry with {@link #draw(ShadowVertexProgram)} by
+     * overdraw program
+     *
+     * @param program overdraw program
+     */
+    public void draw(OverdrawProgram program) {
+        if (mVertexesSize > 0) {
+            glUniform1f(program.mVertexZLoc, vertexZ);
+            glVertexAttribPointer(program.mVertexPosLoc, 4, GL_FLOAT, false, 0,
+                                  mVertexesBuffer);
+            glEnableVertexAttribArray(program.mVertexPosLoc);
+            glDrawArrays(GL_TRIANGLE_STRIP, 0, mVertexesSize);
+        }
+    }
 }
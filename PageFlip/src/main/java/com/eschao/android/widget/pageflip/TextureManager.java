@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Global texture memory manager of pages
+ * <p>
+ * Every page texture is accounted with its size in bytes, the total usage of
+ * all pages in all {@link PageFlip} instances is limited by a configurable
+ * budget. Before uploading a new texture, the least recently drawn textures
+ * which are not drawn in the last frame of their page will be deleted until
+ * there is enough room for the new one. Renders will see an evicted texture
+ * as unset and recreate it when it is needed again.
+ * </p>
+ * <p>
+ * A texture can only be deleted in its own OpenGL thread, so only textures
+ * uploaded in the calling thread are evicted. Visible textures are never
+ * evicted, that means the usage could exceed the budget temporarily.
+ * </p>
+ * <p>
+ * Textures which are not held by pages, for example: the texture of frame
+ * cache, are counted in usage as pinned ones, they make room by evicting
+ * page textures but are never evicted.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public final class TextureManager {
+
+    private final static String TAG = "TextureManager";
+    private final static long UNLIMITED_BUDGET = Long.MAX_VALUE;
+    private static TextureManager __object;
+
+    // pages which hold textures
+    private final ArrayList<Page> mPages;
+    private long mBudget;
+    private long mUsage;
+    // sequence number of drawing, used to find the least recently drawn one
+    private long mDrawnSeq;
+
+    /**
+     * Get the unique manager object
+     *
+     * @return texture manager
+     */
+    public static synchronized TextureManager get() {
+        if (__object == null) {
+            __object = new TextureManager();
+        }
+        return __object;
+    }
+
+    private TextureManager() {
+        mPages = new ArrayList<>();
+        mBudget = UNLIMITED_BUDGET;
+        mUsage = 0;
+        mDrawnSeq = 0;
+    }
+
+    /**
+     * Set memory budget of all page textures
+     *
+     * @param bytes budget in bytes, 0 or negative value means unlimited
+     */
+    public synchronized void setBudget(long bytes) {
+        mBudget = bytes > 0 ? bytes : UNLIMITED_BUDGET;
+    }
+
+    /**
+     * Get memory budget of all page textures
+     *
+     * @return budget in bytes
+     */
+    public synchronized long getBudget() {
+        return mBudget;
+    }
+
+    /**
+     * Get current memory usage of all page textures
+     *
+     * @return usage in bytes
+     */
+    public synchronized long getUsage() {
+        return mUsage;
+    }
+
+    /**
+     * Make room for a new texture by evicting textures in calling thread
+     *
+     * @param bytes bytes of new texture
+     * @param page page to upload texture, null for a pinned texture
+     * @param index texture index of page which shouldn't be evicted
+     */
+    synchronized void reserve(long bytes, Page page, int index) {
+        final Thread thread = Thread.currentThread();
+        while (mUsage + bytes > mBudget) {
+            // find the least recently drawn and invisible texture
+            Page victim = null;
+            int victimIndex = -1;
+            long minSeq = Long.MAX_VALUE;
+            for (int i = 0, size = mPages.size(); i < size; ++i) {
+                Page p = mPages.get(i);
+                if (p.getGLThread() != thread) {
+                    continue;
+                }
+
+                for (int j = 0; j < Page.TEXTURE_SIZE; ++j) {
+                    if ((p == page && j == index) ||
+                        !p.isEvictable(j) ||
+                        p.getTextureDrawnSeq(j) >= minSeq) {
+                        continue;
+                    }
+
+                    victim = p;
+                    victimIndex = j;
+                    minSeq = p.getTextureDrawnSeq(j);
+                }
+            }
+
+            if (victim == null) {
+                Log.w(TAG, "Texture budget exceeded: " + (mUsage + bytes) +
+                           "/" + mBudget + " bytes");
+                return;
+            }
+
+            victim.evictTexture(victimIndex);
+        }
+    }
+
+    /**
+     * Account a new uploaded texture or a texture moved to other page
+     *
+     * @param page page which holds the texture
+     * @param bytes bytes changed, negative value means released
+     */
+    synchronized void onChanged(Page page, long bytes) {
+        mUsage += bytes;
+        if (!mPages.contains(page)) {
+            mPages.add(page);
+        }
+    }
+
+    /**
+     * Account a pinned texture which is not held by page
+     *
+     * @param bytes bytes changed, negative value means released
+     */
+    synchronized void onPinnedChanged(long bytes) {
+        mUsage += bytes;
+    }
+
+    /**
+     * Account released textures
+     *
+     * @param page page which held the textures
+     * @param bytes released bytes
+     * @param hasTextures does page still hold textures
+     */
+    synchronized void onReleased(Page page, long bytes, boolean hasTextures) {
+        mUsage -= bytes;
+        if (!hasTextures) {
+            mPages.remove(page);
+        }
+    }
+
+    /**
+     * Get a new sequence number for a drawn texture
+     *
+     * @return sequence number
+     */
+    synchronized long nextDrawnSeq() {
+        return ++mDrawnSeq;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+/**
+ * Touch point predictor
+ * <p>
+ * What user sees always lags behind finger by the input-to-display latency.
+ * The predictor estimates finger velocity from recent touch samples and
+ * extrapolates touch point to the expected display time, page is curled with
+ * the predicted point so that it catches up with finger.
+ * </p>
+ * <p>
+ * Two filters are supported:
+ * <ul>
+ *     <li>Linear: velocity of the last two samples, it responds quickly but
+ *     is sensitive to noise of touch panel</li>
+ *     <li>Kalman: a constant velocity Kalman filter for every axis, it
+ *     smooths noise with a little more lag when finger changes direction</li>
+ * </ul>
+ * Predicted distance is clamped to avoid overshooting, and no prediction is
+ * done if finger is paused. It doesn't depend on Android API, so it can be
+ * tested with recorded traces on JVM.
+ * </p>
+ *
+ * @author eschao
+ */
+
+final class TouchPredictor {
+
+    final static int MODE_LINEAR = 1;
+    final static int MODE_KALMAN = 2;
+
+    // samples with longer interval mean finger is paused
+    private final static long MAX_SAMPLE_INTERVAL = 100000000L; // 100ms
+    private final static float NANOS_PER_SECOND = 1e9f;
+
+    private final int mMode;
+    // maximum predicted distance in pixels
+    private final float mMaxDistance;
+
+    private int mSampleCount;
+    private float mLastX;
+    private float mLastY;
+    private long mLastTime;
+    // velocity in pixels per second of linear filter
+    private float mVelocityX;
+    private float mVelocityY;
+    // Kalman filters of x and y
+    private final Kalman mKalmanX;
+    private final Kalman mKalmanY;
+
+    /**
+     * Constructor
+     *
+     * @param mode {@link #MODE_LINEAR} or {@link #MODE_KALMAN}
+     * @param maxDistance maximum predicted distance in pixels
+     */
+    TouchPredictor(int mode, float maxDistance) {
+        mMode = mode;
+        mMaxDistance = maxDistance;
+        mKalmanX = new Kalman();
+        mKalmanY = new Kalman();
+        mSampleCount = 0;
+    }
+
+    /**
+     * Reset with the first touch point
+     *
+     * @param x x of touch point
+     * @param y y of touch point
+     * @param time sample time in nanoseconds
+     */
+    void reset(float x, float y, long time) {
+        mSampleCount = 1;
+        mLastX = x;
+        mLastY = y;
+        mLastTime = time;
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mKalmanX.reset(x);
+        mKalmanY.reset(y);
+    }
+
+    /**
+     * Add a touch sample
+     *
+     * @param x x of touch point
+     * @param y y of touch point
+     * @param time sample time in nanoseconds
+     */
+    void addSample(float x, float y, long time) {
+        if (mSampleCount == 0) {
+            reset(x, y, time);
+            return;
+        }
+
+        final long interval = time - mLastTime;
+        if (interval <= 0) {
+            // same batch of events, it is another measurement at the same
+            // time, Kalman filters must see it too, otherwise their position
+            // lags behind the last point
+            if (mMode == MODE_KALMAN) {
+                mKalmanX.update(x, 0);
+                mKalmanY.update(y, 0);
+            }
+            mLastX = x;
+            mLastY = y;
+            return;
+        }
+
+        // finger was paused, restart estimating
+        if (interval > MAX_SAMPLE_INTERVAL) {
+            reset(x, y, time);
+            return;
+        }
+
+        final float dt = interval / NANOS_PER_SECOND;
+        if (mMode == MODE_KALMAN) {
+            mKalmanX.update(x, dt);
+            mKalmanY.update(y, dt);
+        }
+        else {
+            mVelocityX = (x - mLastX) / dt;
+            mVelocityY = (y - mLastY) / dt;
+        }
+
+        mLastX = x;
+        mLastY = y;
+        mLastTime = time;
+        mSampleCount++;
+    }
+
+    /**
+     * Predict touch point
+     *
+     * @param time the time to predict in nanoseconds, normally it is the
+     *             expected display time
+     * @param out array to return predicted point: [x, y]
+     */
+    void predict(long time, float[] out) {
+        out[0] = mLastX;
+        out[1] = mLastY;
+        final long ahead = time - mLastTime;
+        if (mSampleCount < 2 || ahead <= 0 || ahead > MAX_SAMPLE_INTERVAL) {
+            return;
+        }
+
+        final float dt = ahead / NANOS_PER_SECOND;
+        float dx;
+        float dy;
+        if (mMode == MODE_KALMAN) {
+            dx = mKalmanX.mPos + mKalmanX.mVelocity * dt - mLastX;
+            dy = mKalmanY.mPos + mKalmanY.mVelocity * dt - mLastY;
+        }
+        else {
+            dx = mVelocityX * dt;
+            dy = mVelocityY * dt;
+        }
+
+        // clamp predicted distance
+        final float distance = (float)Math.hypot(dx, dy);
+        if (distance > mMaxDistance) {
+            final float ratio = mMaxDistance / distance;
+            dx *= ratio;
+            dy *= ratio;
+        }
+        out[0] += dx;
+        out[1] += dy;
+    }
+
+    /**
+     * Constant velocity Kalman filter of one axis
+     */
+    private final static class Kalman {
+
+        // variance of acceleration (pixels/s^2)^2 and measurement (pixels^2)
+        private final static float PROCESS_NOISE = 4e6f;
+        private final static float MEASUREMENT_NOISE = 4f;
+
+        float mPos;
+        float mVelocity;
+        // covariance matrix [p00 p01; p01 p11]
+        private float mP00;
+        private float mP01;
+        private float mP11;
+
+        void reset(float pos) {
+            mPos = pos;
+            mVelocity = 0;
+            mP00 = MEASUREMENT_NOISE;
+            mP01 = 0;
+            mP11 = 1e6f;
+        }
+
+        void update(float measured, float dt) {
+            // 1. predict state and covariance
+            mPos += mVelocity * dt;
+            final float dt2 = dt * dt;
+            final float q = PROCESS_NOISE;
+            mP00 += dt * (2 * mP01 + dt * mP11) + q * dt2 * dt2 / 4;
+            mP01 += dt * mP11 + q * dt2 * dt / 2;
+            mP11 += q * dt2;
+
+            // 2. correct with measurement
+            final float s = mP00 + MEASUREMENT_NOISE;
+            final float k0 = mP00 / s;
+            final float k1 = mP01 / s;
+            final float residual = measured - mPos;
+            mPos += k0 * residual;
+            mVelocity += k1 * residual;
+            mP11 -= k1 * mP01;
+            mP01 -= k1 * mP00;
+            mP00 -= k0 * mP00;
+        }
+    }
+}
@@ -27,6 +27,9 @@ import static android.opengl.GLES20.glGetUniformLocation;
  *     <li>vertex_shader.glsl</li>
  *     <li>fragment_shader.glsl</li>
  * </ul>
+ * <p>Every kind of page texture is drawn by its own program variant which is
+ * compiled with macros instead of branching on uniforms in fragment shader,
+ * see {@link VertexProgramVariants}</p>
  *
  * @author eschao
  */
@@ -37,23 +40,54 @@ class VertexProgram extends GLProgram {
     final static String VAR_VERTEX_POS    = "a_vexPosition";
     final static String VAR_TEXTURE_COORD = "a_texCoord";
     final static String VAR_TEXTURE       = "u_texture";
+    final static String VAR_BACKGROUND    = "u_background";
+    final static String VAR_OVERLAY_RECT  = "u_overlayRect";
+    final static String VAR_TINT          = "u_tint";
 
-    // universal model-view matrix
-    final static float[] MVMatrix = new float[16];
-    // universal model-view-project matrix
-    final static float[] MVPMatrix = new float[16];
+    // texture variants
+    // plain variant draws RGBA or RGB565 texture directly
+    final static int TEXTURE_PLAIN     = 0;
+    // luminance variant colors luminance texture with tint color
+    final static int TEXTURE_LUMINANCE = 1;
+    // layered variant composites overlay texture on background layer
+    final static int TEXTURE_LAYERED   = 2;
+    final static int TEXTURE_VARIANTS  = 3;
+    // macros to enable texture variant in shader script
+    private final static String[] TEXTURE_DEFINES = {null,
+                                                     "LUMINANCE",
+                                                     "LAYERED"};
+
+    private final int mTextureVariant;
 
     // variable handles after compiled & linked shader scripts
     int mMVPMatrixLoc;
     int mVertexPosLoc;
     int mTexCoordLoc;
     int mTextureLoc;
+    int mBackgroundLoc;
+    int mOverlayRectLoc;
+    int mTintLoc;
 
     public VertexProgram() {
+        this(TEXTURE_PLAIN);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param textureVariant texture variant: {@link #TEXTURE_PLAIN},
+     *                       {@link #TEXTURE_LUMINANCE} or
+     *                       {@link #TEXTURE_LAYERED}
+     */
+    public VertexProgram(int textureVariant) {
         super();
 
         // init with invalid value
+        mTextureVariant = textureVariant;
         mTextureLoc = INVALID_GL_HANDLE;
+        mBackgroundLoc = INVALID_GL_HANDLE;
+        mOverlayRectLoc = INVALID_GL_HANDLE;
+        mTintLoc = INVALID_GL_HANDLE;
         mMVPMatrixLoc = INVALID_GL_HANDLE;
         mTexCoordLoc = INVALID_GL_HANDLE;
         mVertexPosLoc = INVALID_GL_HANDLE;
@@ -67,10 +101,29 @@ class VertexProgram extends GLProgram {
      * @throws PageFlipException raise exception if fail to initiate program
      */
     public VertexProgram init(Context context) throws PageFlipException {
-        super.init(context, R.raw.vertex_shader, R.raw.fragment_shader);
+        super.init(context, R.raw.vertex_shader, R.raw.fragment_shader,
+                   getDefines());
         return this;
     }
 
+    /**
+     * Get macros of texture variant together with given ones
+     *
+     * @param defines other macros of subclass
+     * @return macro names to compile program variant
+     */
+    protected String[] getDefines(String... defines) {
+        final String define = TEXTURE_DEFINES[mTextureVariant];
+        if (define == null) {
+            return defines;
+        }
+
+        String[] all = new String[defines.length + 1];
+        System.arraycopy(defines, 0, all, 0, defines.length);
+        all[defines.length] = define;
+        return all;
+    }
+
     /**
      * Get variable handles after linked shader program
      */
@@ -80,6 +133,10 @@ class VertexProgram extends GLProgram {
             mTexCoordLoc = glGetAttribLocation(mProgramRef, VAR_TEXTURE_COORD);
             mMVPMatrixLoc = glGetUniformLocation(mProgramRef, VAR_MVP_MATRIX);
             mTextureLoc = glGetUniformLocation(mProgramRef, VAR_TEXTURE);
+            mBackgroundLoc = glGetUniformLocation(mProgramRef, VAR_BACKGROUND);
+            mOverlayRectLoc = glGetUniformLocation(mProgramRef,
+                                                   VAR_OVERLAY_RECT);
+            mTintLoc = glGetUniformLocation(mProgramRef, VAR_TINT);
         }
     }
 
@@ -90,25 +147,33 @@ class VertexProgram extends GLProgram {
         super.delete();
 
         mTextureLoc = INVALID_GL_HANDLE;
+        mBackgroundLoc = INVALID_GL_HANDLE;
+        mOverlayRectLoc = INVALID_GL_HANDLE;
+        mTintLoc = INVALID_GL_HANDLE;
         mMVPMatrixLoc = INVALID_GL_HANDLE;
         mTexCoordLoc = INVALID_GL_HANDLE;
         mVertexPosLoc = INVALID_GL_HANDLE;
     }
 
     /**
-     * Initiate matrix with view size
+     * Initiate model-view-project matrix with view size
+     * <p>Program is shared by all PageFlip instances, every instance holds its
+     * own matrix and sets it after using program</p>
      *
+     * @param mvpMatrix matrix to be initiated
      * @param left view left
      * @param right view right
      * @param bottom view bottom
      * @param top view top
      */
-    public void initMatrix(float left, float right, float bottom, float top) {
+    static void initMatrix(float[] mvpMatrix, float left, float right,
+                           float bottom, float top) {
         float[] projectMatrix = new float[16];
+        float[] mvMatrix = new float[16];
         Matrix.orthoM(projectMatrix, 0, left, right, bottom, top, 0, 6000);
-        Matrix.setIdentityM(MVMatrix, 0);
-        Matrix.setLookAtM(MVMatrix, 0, 0, 0, 3000, 0, 0, 0, 0, 1, 0);
-        Matrix.setIdentityM(MVPMatrix, 0);
-        Matrix.multiplyMM(MVPMatrix, 0, projectMatrix, 0, MVMatrix, 0);
+        Matrix.setIdentityM(mvMatrix, 0);
+        Matrix.setLookAtM(mvMatrix, 0, 0, 0, 3000, 0, 0, 0, 0, 1, 0);
+        Matrix.setIdentityM(mvpMatrix, 0);
+        Matrix.multiplyMM(mvpMatrix, 0, projectMatrix, 0, mvMatrix, 0);
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import android.content.Context;
+
+import static android.opengl.GLES20.glUniformMatrix4fv;
+import static android.opengl.GLES20.glUseProgram;
+
+/**
+ * Texture variants of a vertex program
+ * <p>
+ * Luminance and layered textures need different fragment codes, instead of
+ * branching on uniforms for every fragment, each kind of texture is drawn by
+ * a program variant compiled with its own macros. Page selects variant when
+ * it binds texture, the selected program is used and its matrix is set only
+ * if it is different with the current one.
+ * </p>
+ * <p>Programs are shared by PageFlip instances, {@link #begin(float[])}
+ * should be called with matrix of instance before drawing</p>
+ *
+ * @author eschao
+ */
+
+final class VertexProgramVariants {
+
+    // programs indexed by texture variant
+    private final VertexProgram[] mPrograms;
+    // matrix of the current drawing
+    private float[] mMVPMatrix;
+    // program in use, null means it is unknown
+    private VertexProgram mCurrent;
+
+    /**
+     * Constructor
+     *
+     * @param plain program of {@link VertexProgram#TEXTURE_PLAIN}
+     * @param luminance program of {@link VertexProgram#TEXTURE_LUMINANCE}
+     * @param layered program of {@link VertexProgram#TEXTURE_LAYERED}
+     */
+    VertexProgramVariants(VertexProgram plain,
+                          VertexProgram luminance,
+                          VertexProgram layered) {
+        mPrograms = new VertexProgram[VertexProgram.TEXTURE_VARIANTS];
+        mPrograms[VertexProgram.TEXTURE_PLAIN] = plain;
+        mPrograms[VertexProgram.TEXTURE_LUMINANCE] = luminance;
+        mPrograms[VertexProgram.TEXTURE_LAYERED] = layered;
+        mMVPMatrix = null;
+        mCurrent = null;
+    }
+
+    /**
+     * Create variants of vertex program
+     *
+     * @return program variants
+     */
+    static VertexProgramVariants create() {
+        return new VertexProgramVariants(
+                new VertexProgram(VertexProgram.TEXTURE_PLAIN),
+                new VertexProgram(VertexProgram.TEXTURE_LUMINANCE),
+                new VertexProgram(VertexProgram.TEXTURE_LAYERED));
+    }
+
+    /**
+     * Create variants of fold back vertex program
+     *
+     * @param variant {@link FoldBackVertexProgram#VARIANT_MASKED} or
+     *                {@link FoldBackVertexProgram#VARIANT_UNMASKED}
+     * @return program variants
+     */
+    static VertexProgramVariants createFoldBack(int variant) {
+        return new VertexProgramVariants(
+                new FoldBackVertexProgram(variant,
+                                          VertexProgram.TEXTURE_PLAIN),
+                new FoldBackVertexProgram(variant,
+                                          VertexProgram.TEXTURE_LUMINANCE),
+                new FoldBackVertexProgram(variant,
+                                          VertexProgram.TEXTURE_LAYERED));
+    }
+
+    /**
+     * Initiate all program variants
+     *
+     * @param context Android context
+     * @throws PageFlipException if fail to compile and link programs
+     */
+    void init(Context context) throws PageFlipException {
+        for (VertexProgram program : mPrograms) {
+            program.init(context);
+        }
+    }
+
+    /**
+     * Delete all program variants
+     */
+    void delete() {
+        for (VertexProgram program : mPrograms) {
+            program.delete();
+        }
+        mCurrent = null;
+    }
+
+    /**
+     * Begin drawing with given matrix
+     * <p>The plain variant is used, it should be called in OpenGL thread</p>
+     *
+     * @param mvpMatrix model-view-project matrix of PageFlip instance
+     * @return plain program
+     */
+    VertexProgram begin(float[] mvpMatrix) {
+        mMVPMatrix = mvpMatrix;
+        mCurrent = null;
+        return use(VertexProgram.TEXTURE_PLAIN);
+    }
+
+    /**
+     * Use program of given texture variant
+     *
+     * @param textureVariant texture variant
+     * @return program in use
+     */
+    VertexProgram use(int textureVariant) {
+        final VertexProgram program = mPrograms[textureVariant];
+        if (program != mCurrent) {
+            glUseProgram(program.mProgramRef);
+            glUniformMatrix4fv(program.mMVPMatrixLoc, 1, false, mMVPMatrix, 0);
+            mCurrent = program;
+        }
+        return program;
+    }
+}
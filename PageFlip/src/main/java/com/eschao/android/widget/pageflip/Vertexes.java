@@ -326,6 +326,27 @@ class Vertexes {
         return this;
     }
 
+    /**
+     * Rotate texture coordinates 90 degree clockwise
+     * <p>
+     * All texture coordinates added by {@link #addVertex} are computed in page
+     * coordinate system, if the texture is rotated on page, every coordinate
+     * (x, y) should be mapped to (y, 1 - x) before putting to float buffer.
+     * </p>
+     *
+     * @param isMirror true if mirror x coordinate before rotating
+     * @return self
+     */
+    public Vertexes rotateTextureCoords(boolean isMirror) {
+        final int size = (mNext / mSizeOfPerVex) << 1;
+        for (int i = 0; i < size; i += 2) {
+            float x = isMirror ? 1 - mTextureCoords[i] : mTextureCoords[i];
+            mTextureCoords[i] = mTextureCoords[i + 1];
+            mTextureCoords[i + 1] = 1 - x;
+        }
+        return this;
+    }
+
     /**
      * Put data from float array to float buffer
      *
@@ -404,4 +425,20 @@ class Vertexes {
 
         glDrawArrays(type, offset, length);
     }
+
+    /**
+     * Draw vertexes with given offset and length without texture coordinates
+     *
+     * @param type openGL drawing type: TRIANGLE, STRIP, FAN
+     * @param hVertexPos vertex var in shader program
+     * @param offset vertex start offset in buffer
+     * @param length vertex length to be drawn
+     */
+    public void drawPositionsWith(int type, int hVertexPos,
+                                  int offset, int length) {
+        glVertexAttribPointer(hVertexPos, mSizeOfPerVex, GL_FLOAT, false, 0,
+                              mVertexesBuf);
+        glEnableVertexAttribArray(hVertexPos);
+        glDrawArrays(type, offset, length);
+    }
 }
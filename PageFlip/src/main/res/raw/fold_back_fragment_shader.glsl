@@ -1,14 +1,44 @@
 precision mediump float;
 uniform sampler2D u_texture;
 uniform sampler2D u_shadow;
+#ifdef LAYERED
+uniform sampler2D u_background;
+// rect of overlay in page texture space: (left, top, 1/width, 1/height)
+uniform vec4 u_overlayRect;
+#endif
+#ifdef LUMINANCE
+uniform vec4 u_tint;
+#endif
+#ifdef MASK_COLOR
 uniform vec4 u_maskColor;
+#endif
 varying vec2 v_texCoord;
 varying float v_shadowX;
 
 void main() {
+#ifdef LAYERED
+    // overlay only covers its rect of page, remap page coordinate to it and
+    // draw background alone outside the rect
+    vec2 overlayCoord = (v_texCoord - u_overlayRect.xy) * u_overlayRect.zw;
+    vec2 inside = step(vec2(0.0), overlayCoord) *
+                  step(overlayCoord, vec2(1.0));
+    vec4 texture = texture2D(u_texture, overlayCoord) * (inside.x * inside.y);
+#else
     vec4 texture = texture2D(u_texture, v_texCoord);
+#endif
+#ifdef LUMINANCE
+    // luminance is stored in alpha channel, color it with tint
+    texture = vec4(u_tint.rgb * texture.a, 1.0);
+#endif
+#ifdef LAYERED
+    vec4 background = texture2D(u_background, v_texCoord);
+    texture = vec4(texture.rgb + background.rgb * (1.0 - texture.a), 1.0);
+#endif
     vec2 shadowCoord = vec2(v_shadowX, 0);
     vec4 shadow = texture2D(u_shadow, shadowCoord);
-    vec4 maskedTexture = vec4(mix(texture.rgb, u_maskColor.rgb, u_maskColor.a), 1.0);
-    gl_FragColor = vec4(maskedTexture.rgb * (1.0 - shadow.a) + shadow.rgb, maskedTexture.a);
+#ifdef MASK_COLOR
+    // only single page mode masks back of fold page
+    texture.rgb = mix(texture.rgb, u_maskColor.rgb, u_maskColor.a);
+#endif
+    gl_FragColor = vec4(texture.rgb * (1.0 - shadow.a) + shadow.rgb, 1.0);
 }
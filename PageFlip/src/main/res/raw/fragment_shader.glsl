@@ -1,7 +1,35 @@
 precision mediump float;
 uniform sampler2D u_texture;
+#ifdef LAYERED
+uniform sampler2D u_background;
+// rect of overlay in page texture space: (left, top, 1/width, 1/height)
+uniform vec4 u_overlayRect;
+#endif
+#ifdef LUMINANCE
+uniform vec4 u_tint;
+#endif
 varying vec2 v_texCoord;
 
 void main() {
-    gl_FragColor = texture2D(u_texture, v_texCoord);
+#ifdef LAYERED
+    // overlay only covers its rect of page, remap page coordinate to it and
+    // draw background alone outside the rect
+    vec2 overlayCoord = (v_texCoord - u_overlayRect.xy) * u_overlayRect.zw;
+    vec2 inside = step(vec2(0.0), overlayCoord) *
+                  step(overlayCoord, vec2(1.0));
+    vec4 texture = texture2D(u_texture, overlayCoord) * (inside.x * inside.y);
+#else
+    vec4 texture = texture2D(u_texture, v_texCoord);
+#endif
+#ifdef LUMINANCE
+    // luminance is stored in alpha channel, color it with tint
+    texture = vec4(u_tint.rgb * texture.a, 1.0);
+#endif
+#ifdef LAYERED
+    // page texture is an overlay with premultiplied alpha, composite it on
+    // the shared background layer
+    vec4 background = texture2D(u_background, v_texCoord);
+    texture = vec4(texture.rgb + background.rgb * (1.0 - texture.a), 1.0);
+#endif
+    gl_FragColor = texture;
 }
@@ -0,0 +1,10 @@
+precision mediump float;
+uniform mat4 u_MVPMatrix;
+uniform float u_vexZ;
+uniform float u_isFixedZ;
+attribute vec4 a_vexPosition;
+
+void main() {
+    float z = mix(a_vexPosition.z, u_vexZ, u_isFixedZ);
+    gl_Position = u_MVPMatrix * vec4(a_vexPosition.xy, z, 1.0);
+}
\ No newline at end of file
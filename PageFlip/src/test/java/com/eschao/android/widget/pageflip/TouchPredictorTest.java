@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.pageflip;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replay tests of {@link TouchPredictor}
+ * <p>Touch traces are generated with a 120Hz sampling rate and a little
+ * noise of touch panel, every sample is predicted one frame ahead and
+ * compared with the real finger position at that time</p>
+ *
+ * @author eschao
+ */
+public class TouchPredictorTest {
+
+    private final static long SAMPLE_INTERVAL = 8333333L; // 120Hz
+    private final static long AHEAD = 16666666L; // one frame at 60Hz
+    private final static float MAX_DISTANCE = 60;
+    private final static float NOISE = 0.5f;
+    // samples for filter to converge before measuring
+    private final static int WARMUP_SAMPLES = 4;
+    private final static int SAMPLES = 60;
+
+    /**
+     * Finger trace
+     */
+    private interface Trace {
+
+        /**
+         * Get x of finger at given time, y is always 0
+         *
+         * @param t time in seconds
+         * @return x in pixels
+         */
+        float x(float t);
+    }
+
+    /**
+     * Errors of a replayed trace
+     */
+    private final static class Result {
+        // mean and max distance between predicted and real point
+        float meanError;
+        float maxError;
+        // mean distance between the last sample and real point, it is the
+        // lag without prediction
+        float meanLag;
+        // the largest predicted x beyond the turning point of trace
+        float overshoot;
+    }
+
+    // moving at constant 1000 pixels/s
+    private final static Trace LINEAR = new Trace() {
+        @Override
+        public float x(float t) {
+            return 1000 * t;
+        }
+    };
+
+    // starting from 200 pixels/s with acceleration 4000 pixels/s^2
+    private final static Trace ACCELERATING = new Trace() {
+        @Override
+        public float x(float t) {
+            return 200 * t + 2000 * t * t;
+        }
+    };
+
+    // moving right at 1000 pixels/s and turning back at 250ms
+    private final static float TURN_TIME = 0.25f;
+    private final static Trace DIRECTION_CHANGE = new Trace() {
+        @Override
+        public float x(float t) {
+            return t < TURN_TIME ? 1000 * t : 1000 * (2 * TURN_TIME - t);
+        }
+    };
+
+    @Test
+    public void predictLinearTrace() {
+        for (int mode : new int[] {TouchPredictor.MODE_LINEAR,
+                                   TouchPredictor.MODE_KALMAN}) {
+            Result r = replay(mode, LINEAR, Float.MAX_VALUE);
+            // lag of one frame is about 16.7 pixels
+            assertTrue(name(mode) + " mean error " + r.meanError,
+                       r.meanError < 2);
+            assertTrue(name(mode) + " max error " + r.maxError,
+                       r.maxError < 6);
+            assertTrue(r.meanError < r.meanLag / 4);
+        }
+    }
+
+    @Test
+    public void predictAcceleratingTrace() {
+        for (int mode : new int[] {TouchPredictor.MODE_LINEAR,
+                                   TouchPredictor.MODE_KALMAN}) {
+            // constant velocity model lags behind acceleration, Kalman
+            // filter lags more since it smooths velocity
+            Result r = replay(mode, ACCELERATING, Float.MAX_VALUE);
+            assertTrue(name(mode) + " mean error " + r.meanError,
+                       r.meanError < 8);
+            assertTrue(name(mode) + " max error " + r.maxError,
+                       r.maxError < 12);
+            assertTrue(r.meanError < r.meanLag / 2);
+        }
+    }
+
+    @Test
+    public void limitOvershootOnDirectionChange() {
+        final float turnX = DIRECTION_CHANGE.x(TURN_TIME);
+        for (int mode : new int[] {TouchPredictor.MODE_LINEAR,
+                                   TouchPredictor.MODE_KALMAN}) {
+            Result r = replay(mode, DIRECTION_CHANGE, turnX);
+            // prediction can't see turning ahead, but it shouldn't go further
+            // than one frame of moving beyond the turning point
+            assertTrue(name(mode) + " overshoot " + r.overshoot,
+                       r.overshoot < 20);
+            assertTrue(name(mode) + " mean error " + r.meanError,
+                       r.meanError < r.meanLag);
+        }
+    }
+
+    @Test
+    public void clampPredictedDistance() {
+        TouchPredictor predictor = new TouchPredictor(
+                TouchPredictor.MODE_LINEAR, 10);
+        predictor.reset(0, 0, 0);
+        predictor.addSample(100, 0, SAMPLE_INTERVAL);
+
+        float[] out = new float[2];
+        predictor.predict(SAMPLE_INTERVAL + AHEAD, out);
+        assertEquals(110, out[0], 1e-3f);
+        assertEquals(0, out[1], 1e-3f);
+    }
+
+    @Test
+    public void noPredictionAfterPause() {
+        for (int mode : new int[] {TouchPredictor.MODE_LINEAR,
+                                   TouchPredictor.MODE_KALMAN}) {
+            TouchPredictor predictor = new TouchPredictor(mode, MAX_DISTANCE);
+            predictor.reset(0, 0, 0);
+            predictor.addSample(10, 0, SAMPLE_INTERVAL);
+            // finger stays for 200ms
+            predictor.addSample(10, 0, SAMPLE_INTERVAL + 200000000L);
+
+            float[] out = new float[2];
+            predictor.predict(SAMPLE_INTERVAL + 200000000L + AHEAD, out);
+            assertEquals(10, out[0], 1e-3f);
+        }
+    }
+
+    @Test
+    public void kalmanFollowsSamplesOfSameTime() {
+        TouchPredictor predictor = new TouchPredictor(
+                TouchPredictor.MODE_KALMAN, 1000);
+        long time = 0;
+        predictor.reset(0, 0, time);
+        for (int i = 1; i <= 10; ++i) {
+            time += SAMPLE_INTERVAL;
+            predictor.addSample(i * 10, 0, time);
+        }
+
+        // a sample with the same time jumps forward, the filter must take it
+        // as a measurement, otherwise it stays at 100 and predicted point is
+        // pulled back from the last one
+        predictor.addSample(200, 0, time);
+
+        float[] out = new float[2];
+        predictor.predict(time + 1, out);
+        assertTrue("predicted " + out[0], out[0] > 115);
+    }
+
+    /**
+     * Replay trace with predictor
+     *
+     * @param mode predictor mode
+     * @param trace finger trace
+     * @param turnX x of turning point to measure overshoot
+     * @return errors of prediction
+     */
+    private static Result replay(int mode, Trace trace, float turnX) {
+        TouchPredictor predictor = new TouchPredictor(mode, MAX_DISTANCE);
+        Random random = new Random(7);
+        Result r = new Result();
+        float[] out = new float[2];
+        int count = 0;
+
+        for (int i = 0; i < SAMPLES; ++i) {
+            final long time = i * SAMPLE_INTERVAL;
+            final float x = trace.x(time / 1e9f) +
+                            (random.nextFloat() * 2 - 1) * NOISE;
+            final float y = (random.nextFloat() * 2 - 1) * NOISE;
+            if (i == 0) {
+                predictor.reset(x, y, time);
+                continue;
+            }
+
+            predictor.addSample(x, y, time);
+            predictor.predict(time + AHEAD, out);
+            if (i < WARMUP_SAMPLES) {
+                continue;
+            }
+
+            final float realX = trace.x((time + AHEAD) / 1e9f);
+            final float error = (float)Math.hypot(out[0] - realX, out[1]);
+            r.meanError += error;
+            r.maxError = Math.max(r.maxError, error);
+            r.meanLag += Math.abs(x - realX);
+            r.overshoot = Math.max(r.overshoot, out[0] - turnX);
+            count++;
+        }
+
+        r.meanError /= count;
+        r.meanLag /= count;
+        System.out.println(String.format(
+                "%s: mean error %.2f, max error %.2f, lag %.2f, overshoot %.2f",
+                name(mode), r.meanError, r.maxError, r.meanLag,
+                Math.max(0, r.overshoot)));
+        return r;
+    }
+
+    private static String name(int mode) {
+        return mode == TouchPredictor.MODE_KALMAN ? "Kalman" : "Linear";
+    }
+}
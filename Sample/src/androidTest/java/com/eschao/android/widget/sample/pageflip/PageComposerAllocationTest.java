@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.eschao.android.widget.pageflip.PageFlip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Allocation test of {@link PageComposer}
+ * <p>Pages are composed in test thread directly with foreground of the real
+ * page renders, composing a page and giving it back should not allocate any
+ * object in the steady state</p>
+ *
+ * @author eschao
+ */
+@RunWith(AndroidJUnit4.class)
+public class PageComposerAllocationTest {
+
+    private final static int WIDTH = 240;
+    private final static int HEIGHT = 320;
+    private final static int WARMUP_ROUNDS = 10;
+    private final static int ROUNDS = 100;
+    // small page numbers are boxed by Integer cache without allocation
+    private final static int PAGES = 4;
+
+    private Context mContext;
+    private Handler mHandler;
+    private PageFlipView mPageFlipView;
+    private PageRender mRender;
+    private PageComposer mComposer;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+
+        // drop messages to not allocate them in message queue
+        mHandler = new Handler(Looper.getMainLooper()) {
+            @Override
+            public boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+                msg.recycle();
+                return true;
+            }
+        };
+
+        // view creates its handler, it must be in main thread
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        mPageFlipView = new PageFlipView(mContext);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() {
+        if (mRender != null) {
+            mRender.release();
+        }
+    }
+
+    @Test
+    public void composeSinglePageWithoutAllocation() {
+        useRender(new SinglePageRender(mContext, new PageFlip(mContext),
+                                       mHandler, 0, mPageFlipView));
+        assertComposeWithoutAllocation();
+    }
+
+    @Test
+    public void composeDoublePagesWithoutAllocation() {
+        useRender(new DoublePagesRender(mContext, new PageFlip(mContext),
+                                        mHandler, 0));
+        assertComposeWithoutAllocation();
+    }
+
+    @Test
+    public void retainDropsPagesOutOfRange() {
+        useRender(new DoublePagesRender(mContext, new PageFlip(mContext),
+                                        mHandler, 0));
+        for (int i = 0; i < PAGES; ++i) {
+            mComposer.composePage(i);
+        }
+
+        mComposer.retain(1, 2);
+        assertNull(mComposer.take(0, PageComposer.STAGE_NONE));
+        assertNull(mComposer.take(3, PageComposer.STAGE_NONE));
+
+        PageComposer.Result r = mComposer.take(1, PageComposer.STAGE_NONE);
+        assertNotNull(r);
+        assertEquals(1, r.number);
+        mComposer.recycle(r);
+    }
+
+    private void useRender(PageRender render) {
+        mRender = render;
+        mComposer = render.mComposer;
+        mComposer.setSize(WIDTH, HEIGHT);
+    }
+
+    /**
+     * Compose pages through foreground of render, page texts are measured
+     * and cached in warming up
+     */
+    @SuppressWarnings("deprecation")
+    private void assertComposeWithoutAllocation() {
+        for (int i = 0; i < WARMUP_ROUNDS; ++i) {
+            composeAndRecycle(i % PAGES);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < ROUNDS; ++i) {
+            composeAndRecycle(i % PAGES);
+        }
+        Debug.stopAllocCounting();
+
+        assertEquals("Objects are allocated while composing pages",
+                     0, Debug.getThreadAllocCount());
+    }
+
+    private void composeAndRecycle(int number) {
+        mComposer.composePage(number);
+        PageComposer.Result r = mComposer.take(number, PageComposer.STAGE_NONE);
+        assertNotNull(r);
+        mComposer.recycle(r);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Benchmark of reloading a page from {@link PageDiskCache} against decoding
+ * it by {@link BitmapFactory}
+ * <p>Every path is run {@link #ROUNDS} times after warming up, the median
+ * time is logged and compared</p>
+ *
+ * @author eschao
+ */
+@RunWith(AndroidJUnit4.class)
+public class PageDiskCacheBenchmark {
+
+    private final static String TAG = "PageDiskCacheBenchmark";
+    private final static int WARMUP_ROUNDS = 3;
+    private final static int ROUNDS = 15;
+    private final static String KEY = "benchmark";
+
+    private Resources mResources;
+    private File mDir;
+    private PageDiskCache mCache;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getTargetContext();
+        mResources = context.getResources();
+        mDir = new File(context.getCacheDir(), "pages_benchmark");
+        mCache = new PageDiskCache(mDir, Long.MAX_VALUE);
+        mCache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        mCache.clear();
+        mDir.delete();
+    }
+
+    @Test
+    public void reloadFromDiskIsFasterThanDecoding() {
+        final int resId = R.drawable.p1_1080;
+        Bitmap decoded = decode(resId);
+        assertNotNull(decoded);
+        mCache.put(KEY, decoded);
+
+        // 1. decode with BitmapFactory
+        long[] decodeNanos = new long[ROUNDS];
+        for (int i = -WARMUP_ROUNDS; i < ROUNDS; ++i) {
+            final long start = System.nanoTime();
+            Bitmap b = decode(resId);
+            final long cost = System.nanoTime() - start;
+            b.recycle();
+            if (i >= 0) {
+                decodeNanos[i] = cost;
+            }
+        }
+
+        // 2. reload from disk cache
+        long[] diskNanos = new long[ROUNDS];
+        for (int i = -WARMUP_ROUNDS; i < ROUNDS; ++i) {
+            final long start = System.nanoTime();
+            Bitmap b = mCache.get(KEY);
+            final long cost = System.nanoTime() - start;
+            assertNotNull(b);
+            assertEquals(decoded.getWidth(), b.getWidth());
+            assertEquals(decoded.getHeight(), b.getHeight());
+            assertTrue(decoded.sameAs(b));
+            b.recycle();
+            if (i >= 0) {
+                diskNanos[i] = cost;
+            }
+        }
+
+        final long decodeMedian = median(decodeNanos);
+        final long diskMedian = median(diskNanos);
+        Log.i(TAG, "Page " + decoded.getWidth() + "x" + decoded.getHeight() +
+                   ": BitmapFactory " + decodeMedian / 1000 + "us, disk " +
+                   diskMedian / 1000 + "us");
+        decoded.recycle();
+        assertTrue("Disk cache is slower than decoding: " + diskMedian +
+                   "ns vs " + decodeMedian + "ns",
+                   diskMedian < decodeMedian);
+    }
+
+    private Bitmap decode(int resId) {
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inScaled = false;
+        return BitmapFactory.decodeResource(mResources, resId, opts);
+    }
+
+    private static long median(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
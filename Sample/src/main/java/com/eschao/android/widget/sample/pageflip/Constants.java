@@ -8,4 +8,8 @@ public class Constants {
     public final static String PREF_MESH_PIXELS = "MeshPixels";
     public final static String PREF_DURATION    = "Duration";
     public final static String PREF_PAGE_MODE   = "PageMode";
+
+    // page pack in app external files dir, pages are loaded from it instead
+    // of resources if it exists
+    public final static String PAGE_PACK_FILE   = "pages.ppk";
 }
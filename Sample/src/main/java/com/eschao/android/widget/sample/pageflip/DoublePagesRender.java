@@ -16,12 +16,8 @@
 package com.eschao.android.widget.sample.pageflip;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Rect;
+import android.graphics.Canvas;
 import android.os.Handler;
-import android.os.Message;
 
 import com.eschao.android.widget.pageflip.Page;
 import com.eschao.android.widget.pageflip.PageFlip;
@@ -64,11 +60,17 @@ public class DoublePagesRender extends PageRender {
 
     /**
      * Draw page frame
+     *
+     * @param frameTimeNanos presentation time of frame
      */
-    public void onDrawFrame() {
+    public void onDrawFrame(long frameTimeNanos) {
         // 1. delete unused textures to save memory
         mPageFlip.deleteUnusedTextures();
 
+        // step animation in GL thread before getting pages, if it is ended,
+        // textures are swapped between pages and full pages will be drawn
+        stepAnimation(frameTimeNanos);
+
         // 2. there are two pages for representing the whole screen, we need to
         // draw them one by one
         final Page first = mPageFlip.getFirstPage();
@@ -76,32 +78,24 @@ public class DoublePagesRender extends PageRender {
 
         // 3. check if the first texture is valid for first page, if not,
         // create it with relative content
-        if (!first.isFirstTextureSet()) {
-            drawPage(first.isLeftPage() ? mPageNo : mPageNo + 1);
-            first.setFirstTexture(mBitmap, false);
-        }
+        updateTexture(first, FIRST_TEXTURE,
+                      first.isLeftPage() ? mPageNo : mPageNo + 1);
 
         // 4. check if the first texture is valid for second page
-        if (!second.isFirstTextureSet()) {
-            drawPage(second.isLeftPage() ? mPageNo : mPageNo + 1);
-            second.setFirstTexture(mBitmap, false);
-        }
+        updateTexture(second, FIRST_TEXTURE,
+                      second.isLeftPage() ? mPageNo : mPageNo + 1);
 
         // 5. handle drawing command triggered from finger moving and animating
         if (mDrawCommand == DRAW_MOVING_FRAME ||
             mDrawCommand == DRAW_ANIMATING_FRAME) {
             // before drawing, check if back texture of first page is valid
             // Remember: the first page is always the fold page
-            if (!first.isBackTextureSet()) {
-                drawPage(first.isLeftPage() ? mPageNo - 1 : mPageNo + 2);
-                first.setBackTexture(mBitmap);
-            }
+            updateTexture(first, BACK_TEXTURE,
+                          first.isLeftPage() ? mPageNo - 1 : mPageNo + 2);
 
             // check the second texture of first page is valid.
-            if (!first.isSecondTextureSet()) {
-                drawPage(first.isLeftPage() ? mPageNo - 2 : mPageNo + 3);
-                first.setSecondTexture(mBitmap, false);
-            }
+            updateTexture(first, SECOND_TEXTURE,
+                          first.isLeftPage() ? mPageNo - 2 : mPageNo + 3);
 
             // draw frame for page flip
             mPageFlip.drawFlipFrame();
@@ -110,15 +104,6 @@ public class DoublePagesRender extends PageRender {
         else if (mDrawCommand == DRAW_FULL_PAGE){
             mPageFlip.drawPageFrame();
         }
-
-        // 6. send message to main thread to notify drawing is ended so that
-        // we can continue to calculate next animation frame if need.
-        // Remember: the drawing operation is always in GL thread instead of
-        // main thread
-        Message msg = Message.obtain();
-        msg.what = MSG_ENDED_DRAWING_FRAME;
-        msg.arg1 = mDrawCommand;
-        mHandler.sendMessage(msg);
     }
 
     /**
@@ -128,130 +113,82 @@ public class DoublePagesRender extends PageRender {
      * @param height surface height
      */
     public void onSurfaceChanged(int width, int height) {
-        // recycleRest bitmap resources if need
-        if (mBackgroundBitmap != null) {
-            mBackgroundBitmap.recycle();
-        }
-
-        if (mBitmap != null) {
-            mBitmap.recycle();
-        }
-
-        // create bitmap and canvas for page
-        //mBackgroundBitmap = background;
+        // set size of composed page, pages are composed with upload size so
+        // GL thread never scales them
         Page page = mPageFlip.getFirstPage();
-        int pageW = (int)page.width();
-        int pageH = (int)page.height();
-        mBitmap = Bitmap.createBitmap(pageW, pageH, Bitmap.Config.ARGB_8888);
-        mCanvas.setBitmap(mBitmap);
+        int pageW = page.getTextureUploadWidth();
+        int pageH = page.getTextureUploadHeight();
+        mComposer.setSize(pageW, pageH);
+        page.setTextureFormat(Page.TEXTURE_FORMAT_RGB_565);
+        mPageFlip.getSecondPage()
+                 .setTextureFormat(Page.TEXTURE_FORMAT_RGB_565);
         LoadBitmapTask.get(mContext).set(pageW, pageH, 2);
     }
 
     /**
-     * Handle ended drawing event
-     * In here, we only tackle the animation drawing event, If we need to
-     * continue requesting render, please return true. Remember this function
-     * will be called in main thread
+     * Handle the end of flip animation
+     * <p>Called in GL thread before drawing frame. Should handle forward flip
+     * to update page number and exchange textures between first and second
+     * pages. Don't have to handle backward flip since there is no such state
+     * happened in double page mode</p>
      *
-     * @param what event type
-     * @return ture if need render again
+     * @param state end state of page flip
      */
-    public boolean onEndedDrawing(int what) {
-        if (what == DRAW_ANIMATING_FRAME) {
-            boolean isAnimating = mPageFlip.animating();
-            // continue animating
-            if (isAnimating) {
-                mDrawCommand = DRAW_ANIMATING_FRAME;
-                return true;
+    public void onPageFlipEnded(PageFlipState state) {
+        if (state == PageFlipState.END_WITH_FORWARD) {
+            final Page first = mPageFlip.getFirstPage();
+            final Page second = mPageFlip.getSecondPage();
+            second.swapTexturesWithPage(first);
+
+            // update page number for left page
+            if (first.isLeftPage()) {
+                mPageNo -= 2;
             }
-            // animation is finished
             else {
-                // should handle forward flip to update page number and exchange
-                // textures between first and second pages. Don't have to handle
-                // backward flip since there is no such state happened in double
-                // page mode
-                if (mPageFlip.getFlipState() == PageFlipState.END_WITH_FORWARD)
-                {
-                    final Page first = mPageFlip.getFirstPage();
-                    final Page second = mPageFlip.getSecondPage();
-                    second.swapTexturesWithPage(first);
-
-                    // update page number for left page
-                    if (first.isLeftPage()) {
-                        mPageNo -= 2;
-                    }
-                    else {
-                        mPageNo += 2;
-                    }
-                }
-
-                mDrawCommand = DRAW_FULL_PAGE;
-                return true;
+                mPageNo += 2;
             }
+            mComposer.retain(mPageNo - 2, mPageNo + 3);
         }
-        return false;
+
+        mDrawCommand = DRAW_FULL_PAGE;
     }
 
     /**
-     * Draw page content
+     * Draw page number on composed page content
      *
+     * @param canvas canvas of composed bitmap
      * @param number page number
      */
-    private void drawPage(int number) {
-        final int width = mCanvas.getWidth();
-        final int height = mCanvas.getHeight();
-        Paint p = new Paint();
-        p.setFilterBitmap(true);
-
-        // 1. draw background bitmap
-        Bitmap background = null; // LoadBitmapTask.get(mContext).getBitmap(number);
-        Rect rect = new Rect(0, 0, width, height);
-        if (width > height) {
-            mCanvas.rotate(90);
-            mCanvas.drawBitmap(background, null, rect, p);
-            mCanvas.rotate(-90);
-        }
-        else {
-            mCanvas.drawBitmap(background, null, rect, p);
-        }
-
-        background.recycle();
-        background = null;
-
-        // 2. draw page number
-        int fontSize = (int)(80 * mContext.getResources().getDisplayMetrics()
-                                          .scaledDensity);
-        p.setColor(Color.WHITE);
-        p.setStrokeWidth(1);
-        p.setAntiAlias(true);
-        p.setShadowLayer(5.0f, 8.0f, 8.0f, Color.BLACK);
-        p.setTextSize(fontSize);
+    public void composePage(Canvas canvas, int number) {
+        drawPageText(canvas, number, canvas.getWidth(), canvas.getHeight());
+    }
 
-        String text = String.valueOf(number);
+    String getPageText(int number) {
         if (number < 1) {
-            text = "Preface";
+            return "Preface";
         }
         else if (number > MAX_PAGES) {
-            text = "End";
+            return "End";
         }
-        float textWidth = p.measureText(text);
-        float y = height - p.getTextSize() - 20;
-        mCanvas.drawText(text, (width - textWidth) / 2, y, p);
+        return String.valueOf(number);
+    }
+
+    /**
+     * Every flip turns two pages, target page could be on left or right page
+     */
+    int getRiffleCount(int pageNo) {
+        final int diff = pageNo - mPageNo;
+        return diff >= 0 ? diff / 2 : -((1 - diff) / 2);
+    }
 
+    String getPageHint(int number) {
         if (number == 1) {
-            String firstPage = "The First Page";
-            p.setTextSize(calcFontSize(16));
-            float w = p.measureText(firstPage);
-            float h = p.getTextSize();
-            mCanvas.drawText(firstPage, (width - w) / 2, y + 5 + h, p);
+            return "The First Page";
         }
         else if (number == MAX_PAGES) {
-            String lastPage = "The Last Page";
-            p.setTextSize(calcFontSize(16));
-            float w = p.measureText(lastPage);
-            float h = p.getTextSize();
-            mCanvas.drawText(lastPage, (width - w) / 2, y + 5 + h, p);
+            return "The Last Page";
         }
+        return null;
     }
 
     /**
@@ -19,15 +19,14 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.HashMap;
-import java.util.Iterator;
+import java.io.File;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -47,9 +46,14 @@ public final class LoadBitmapTask implements Runnable {
     final static int MEDIUM_BG = 1;
     final static int LARGE_BG = 2;
     final static int BG_COUNT = 10;
+    final static long MAX_DISK_CACHE_BYTES = 64 * 1024 * 1024;
+    final static int MIN_PREVIEW_SAMPLE_SIZE = 8;
+    final static int MAX_PREVIEW_SAMPLE_SIZE = 16;
     private final ExecutorService mThreadPool;
 
     int mBGSizeIndex;
+    int mPageWidth;
+    int mPageHeight;
     int mQueueMaxSize;
     int mPreRandomNo;
     boolean mIsLandscape;
@@ -58,7 +62,13 @@ public final class LoadBitmapTask implements Runnable {
     Resources mResources;
     Thread mThread;
     // LinkedList<Bitmap> mQueue;
-    HashMap<Integer, Bitmap> mCache;
+    ConcurrentHashMap<Integer, Bitmap> mCache;
+    ConcurrentHashMap<Integer, Bitmap> mPreviewCache;
+    PageDiskCache mDiskCache;
+    PageSource mPageSource;
+    // hold it while drawing cached bitmaps in other threads, cached bitmaps
+    // won't be recycled until it is released
+    final Object mRecycleLock = new Object();
     LinkedList<Integer> mTaskmQueue;
     int[][] mPortraitBGs;
 
@@ -85,13 +95,19 @@ public final class LoadBitmapTask implements Runnable {
         mResources = context.getResources();
         mBGRandom = new Random();
         mBGSizeIndex = SMALL_BG;
+        mPageWidth = 0;
+        mPageHeight = 0;
         mStop = false;
         mThread = null;
         mPreRandomNo = 0;
         mIsLandscape = false;
         mQueueMaxSize = 1;
         // mQueue = new LinkedList<>();
-        mCache = new HashMap<>();
+        mCache = new ConcurrentHashMap<>();
+        mPreviewCache = new ConcurrentHashMap<>();
+        mPageSource = null;
+        mDiskCache = new PageDiskCache(new File(context.getCacheDir(), "pages"),
+                                       MAX_DISK_CACHE_BYTES);
         mTaskmQueue = new LinkedList<>();
 
         // init all available bitmaps
@@ -123,43 +139,91 @@ public final class LoadBitmapTask implements Runnable {
     public void loadBitmaps(final int number, final Runnable callback) {
         mThreadPool.submit(new Runnable() {
             @Override public void run() {
-                loadBitmap(number - 1);
+                loadBitmap(number - 1, callback);
                 callback.run();
                 recycleRest(number);
             }
         });
         mThreadPool.submit(new Runnable() {
             @Override public void run() {
-                loadBitmap(number);
+                loadBitmap(number, callback);
                 callback.run();
                 recycleRest(number);
             }
         });
         mThreadPool.submit(new Runnable() {
             @Override public void run() {
-                loadBitmap(number + 1);
+                loadBitmap(number + 1, callback);
                 callback.run();
                 recycleRest(number);
             }
         });
     }
 
-    private void loadBitmap(int number) {
+    /**
+     * Load bitmap with two stages
+     * <p>If bitmap is not in memory and disk cache, a heavily subsampled
+     * preview is firstly decoded and callback is notified, after that, the
+     * full bitmap will be loaded</p>
+     *
+     * @param number page number
+     * @param callback callback after preview is loaded
+     */
+    private void loadBitmap(int number, Runnable callback) {
         Bitmap b = mCache.get(number);
         if (b == null) {
             Log.d("Default", "ACTUALLY LOADING BITMAP");
+            // 1. load preview to show something as soon as possible
+            if (mPreviewCache.get(number) == null) {
+                Bitmap preview = decodePreviewBitmap(number);
+                if (preview != null) {
+                    putOrRecycle(mPreviewCache, number, preview);
+                    callback.run();
+                }
+            }
+
+            // 2. load full bitmap
             SystemClock.sleep(1000);
             b = getRandomBitmap(number);
-            mCache.put(number, b);
+            putOrRecycle(mCache, number, b);
+
+            // preview is useless after full bitmap is loaded
+            synchronized (mRecycleLock) {
+                Bitmap preview = mPreviewCache.remove(number);
+                if (preview != null) {
+                    preview.recycle();
+                }
+            }
         } else {
             Log.d("Default", "IN CACHE");
         }
     }
 
+    /**
+     * Get bitmap of page
+     * <p>Cached bitmaps are recycled by pool threads, caller must hold
+     * {@link #mRecycleLock} from getting bitmap until it is drawn</p>
+     *
+     * @param number page number
+     * @return bitmap or null if it is not loaded
+     */
     public Bitmap getBitmap(int number) {
         return mCache.get(number);
     }
 
+    /**
+     * Get preview bitmap of page
+     * <p>The preview is much smaller than page, it should only be shown when
+     * full bitmap is still loading. Like {@link #getBitmap(int)}, caller must
+     * hold {@link #mRecycleLock} from getting preview until it is drawn</p>
+     *
+     * @param number page number
+     * @return preview bitmap or null if it is not loaded
+     */
+    public Bitmap getPreviewBitmap(int number) {
+        return mPreviewCache.get(number);
+    }
+
     /**
      * Is task running?
      *
@@ -209,6 +273,9 @@ public final class LoadBitmapTask implements Runnable {
 
     /**
      * Set bitmap width , height and maximum size of cache queue
+     * <p>The given width and height are the target size of decoded bitmap, it
+     * should be same with page size so that bitmap can be drawn on page
+     * without scaling</p>
      *
      * @param w         width of bitmap
      * @param h         height of bitmap
@@ -226,6 +293,13 @@ public final class LoadBitmapTask implements Runnable {
 
         mIsLandscape = w > h;
 
+        // bitmaps in cache are decoded with old size, drop them
+        if (w != mPageWidth || h != mPageHeight) {
+            mPageWidth = w;
+            mPageHeight = h;
+            recycleAll();
+        }
+
         if (maxCached != mQueueMaxSize) {
             mQueueMaxSize = maxCached;
         }
@@ -239,11 +313,48 @@ public final class LoadBitmapTask implements Runnable {
         }
     }
 
+    /**
+     * Set page source
+     * <p>If page source is set, bitmaps are loaded from it instead of
+     * resources</p>
+     *
+     * @param source page source, null to load bitmaps from resources
+     */
+    public synchronized void setPageSource(PageSource source) {
+        if (mPageSource != source) {
+            mPageSource = source;
+            recycleAll();
+        }
+    }
+
+    /**
+     * Load bitmap from page source and scale it to page size
+     *
+     * @param number page number
+     * @param dstW target width
+     * @param dstH target height
+     * @return bitmap object
+     */
+    private Bitmap getBitmapFromSource(int number, int dstW, int dstH) {
+        final PageSource source = mPageSource;
+        number = Math.min(source.getPageCount() - 1, Math.max(number, 0));
+        Bitmap b = source.getPage(number, dstW, dstH);
+        if (b != null && dstW > 0 && dstH > 0 &&
+            (b.getWidth() != dstW || b.getHeight() != dstH)) {
+            Bitmap sb = Bitmap.createScaledBitmap(b, dstW, dstH, true);
+            if (sb != b) {
+                b.recycle();
+                b = sb;
+            }
+        }
+        return b;
+    }
+
     /**
      * Load bitmap from resources randomly
      *
      * @param bitmapId
-     * @return bitmap object
+     * @return bitmap object or null if fail to decode it
      */
     private Bitmap getRandomBitmap(Integer bitmapId) {
         Log.d("Default", "requesting=" + bitmapId);
@@ -254,24 +365,136 @@ public final class LoadBitmapTask implements Runnable {
 //        }
 //
 //        mPreRandomNo = newNo;
-        newNo = Math.min(mPortraitBGs[mBGSizeIndex].length - 1, Math.max(bitmapId, 0));
+        // in landscape, bitmap is kept in portrait and rotated by texture
+        // coordinates when it is drawn, so the target size is inverted
+        int dstW = mIsLandscape ? mPageHeight : mPageWidth;
+        int dstH = mIsLandscape ? mPageWidth : mPageHeight;
+
+        // page source has its own mapped storage, no need disk cache
+        if (mPageSource != null) {
+            return getBitmapFromSource(bitmapId, dstW, dstH);
+        }
+
+        newNo = resourceNoOf(bitmapId);
         int resId = mPortraitBGs[mBGSizeIndex][newNo];
+
+        // 1. try to load decoded bitmap from disk cache
+        final long start = SystemClock.elapsedRealtime();
+        final String key = diskKeyOf(newNo, dstW, dstH);
+        Bitmap b = mDiskCache.get(key);
+        if (b != null) {
+            Log.d(TAG, "Load " + key + " from disk cache in " +
+                       (SystemClock.elapsedRealtime() - start) + "ms");
+            return b;
+        }
+
+        // 2. decode bounds to compute sample size
         BitmapFactory.Options opts = new BitmapFactory.Options();
-        opts.inSampleSize = 2;
-        Bitmap b = BitmapFactory.decodeResource(mResources, resId, opts);
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, opts);
+
+        // 3. decode with the largest sample size which keeps bitmap not less
+        // than target size
+        opts.inSampleSize = computeSampleSize(opts.outWidth, opts.outHeight,
+                                              dstW, dstH);
+        opts.inJustDecodeBounds = false;
+        b = BitmapFactory.decodeResource(mResources, resId, opts);
         Log.d("Default", "ACTUALLY DECODING");
-        if (mIsLandscape) {
-            Matrix matrix = new Matrix();
-            matrix.postRotate(90);
-            Bitmap lb = Bitmap.createBitmap(b, 0, 0, b.getWidth(), b.getHeight(),
-                    matrix, true);
-            b.recycle();
-            return lb;
+        if (b == null) {
+            Log.w(TAG, "Failed to decode " + key + " from resource");
+            return null;
+        }
+
+        // 4. scale to exact page size in here instead of GL thread
+        if (dstW > 0 && dstH > 0 &&
+            (b.getWidth() != dstW || b.getHeight() != dstH)) {
+            Bitmap sb = Bitmap.createScaledBitmap(b, dstW, dstH, true);
+            if (sb != b) {
+                b.recycle();
+                b = sb;
+            }
         }
 
+        Log.d(TAG, "Decode " + key + " from resource in " +
+                   (SystemClock.elapsedRealtime() - start) + "ms");
+
+        // 5. save decoded bitmap to disk cache for next loading
+        mDiskCache.put(key, b);
         return b;
     }
 
+    /**
+     * Decode a heavily subsampled preview from resources
+     * <p>Return null if full bitmap can be quickly loaded from page source or
+     * disk cache, no need preview for it</p>
+     *
+     * @param bitmapId page number
+     * @return preview bitmap or null
+     */
+    private Bitmap decodePreviewBitmap(int bitmapId) {
+        int dstW = mIsLandscape ? mPageHeight : mPageWidth;
+        int dstH = mIsLandscape ? mPageWidth : mPageHeight;
+        int newNo = resourceNoOf(bitmapId);
+        if (mPageSource != null ||
+            mDiskCache.contains(diskKeyOf(newNo, dstW, dstH))) {
+            return null;
+        }
+
+        int resId = mPortraitBGs[mBGSizeIndex][newNo];
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, opts);
+
+        // make preview size is about 1/8 - 1/16 of page size
+        int sampleSize = computeSampleSize(opts.outWidth, opts.outHeight,
+                                           dstW, dstH);
+        opts.inSampleSize = Math.max(MIN_PREVIEW_SAMPLE_SIZE,
+                                     Math.min(MAX_PREVIEW_SAMPLE_SIZE,
+                                              sampleSize * 8));
+        opts.inJustDecodeBounds = false;
+        opts.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeResource(mResources, resId, opts);
+    }
+
+    /**
+     * Get index of bitmap in resources for given page number
+     */
+    private int resourceNoOf(int bitmapId) {
+        return Math.min(mPortraitBGs[mBGSizeIndex].length - 1,
+                        Math.max(bitmapId, 0));
+    }
+
+    /**
+     * Get key of disk cache for given bitmap
+     */
+    private String diskKeyOf(int resNo, int width, int height) {
+        return "p" + resNo + "_" + mBGSizeIndex + "_" + width + "x" + height;
+    }
+
+    /**
+     * Compute the largest power-of-two sample size which keeps the decoded
+     * size is not less than the target size
+     *
+     * @param srcW source width of bitmap
+     * @param srcH source height of bitmap
+     * @param dstW target width
+     * @param dstH target height
+     * @return sample size for decoding
+     */
+    static int computeSampleSize(int srcW, int srcH, int dstW, int dstH) {
+        int sampleSize = 1;
+        if (dstW <= 0 || dstH <= 0) {
+            return sampleSize;
+        }
+
+        while ((srcW / (sampleSize << 1)) >= dstW &&
+               (srcH / (sampleSize << 1)) >= dstH) {
+            sampleSize <<= 1;
+        }
+
+        return sampleSize;
+    }
+
     /**
      * Clear cache queue
      */
@@ -293,7 +516,7 @@ public final class LoadBitmapTask implements Runnable {
 
                 while (mTaskmQueue.peek() != null) {
                     Integer bitmapId = mTaskmQueue.poll();
-                    mCache.put(bitmapId, getRandomBitmap(bitmapId));
+                    putOrRecycle(mCache, bitmapId, getRandomBitmap(bitmapId));
                 }
 
 //                // load bitmap only when no cached bitmap in queue
@@ -314,17 +537,72 @@ public final class LoadBitmapTask implements Runnable {
         }
     }
 
+    /**
+     * Recycle all cached bitmaps
+     * <p>Pool threads may still put bitmaps while recycling, only bitmaps
+     * which are removed from cache by this thread are recycled, a bitmap put
+     * after that is kept</p>
+     */
+    private void recycleAll() {
+        synchronized (mRecycleLock) {
+            for (Map.Entry<Integer, Bitmap> entry : mCache.entrySet()) {
+                recycleEntry(mCache, entry);
+            }
+
+            for (Map.Entry<Integer, Bitmap> entry : mPreviewCache.entrySet()) {
+                recycleEntry(mPreviewCache, entry);
+            }
+        }
+    }
+
     public void recycleRest(int pageNo) {
-        for (Iterator<Map.Entry<Integer, Bitmap>> it = mCache.entrySet().iterator(); it.hasNext(); ) {
-            Map.Entry<Integer, Bitmap> entry = it.next();
-            Integer key = entry.getKey();
+        synchronized (mRecycleLock) {
+            recycleRest(mCache, pageNo);
+            recycleRest(mPreviewCache, pageNo);
+        }
+    }
+
+    private static void recycleRest(ConcurrentHashMap<Integer, Bitmap> cache,
+                                    int pageNo) {
+        for (Map.Entry<Integer, Bitmap> entry : cache.entrySet()) {
+            final int key = entry.getKey();
             if (key != pageNo - 1 && key != pageNo && key != pageNo + 1) {
-                Bitmap bitmap = entry.getValue();
-                if (bitmap != null) {
-                    bitmap.recycle();
-                }
-                it.remove();
+                recycleEntry(cache, entry);
             }
         }
     }
+
+    /**
+     * Remove cached bitmap and recycle it
+     * <p>Bitmap is only recycled if it is still mapped to its key, so a
+     * bitmap is never recycled twice and a newly put one is never dropped
+     * without recycling</p>
+     *
+     * @param cache bitmap cache
+     * @param entry entry of cache
+     */
+    private static void recycleEntry(ConcurrentHashMap<Integer, Bitmap> cache,
+                                     Map.Entry<Integer, Bitmap> entry) {
+        final Bitmap bitmap = entry.getValue();
+        if (cache.remove(entry.getKey(), bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Put bitmap to cache if there is no bitmap of the page
+     * <p>Page could be loaded by more than one pool thread at the same time,
+     * the later one is recycled instead of replacing the cached one which
+     * could be drawing</p>
+     *
+     * @param cache bitmap cache
+     * @param number page number
+     * @param bitmap loaded bitmap
+     */
+    private static void putOrRecycle(ConcurrentHashMap<Integer, Bitmap> cache,
+                                     int number, Bitmap bitmap) {
+        if (bitmap != null && cache.putIfAbsent(number, bitmap) != null) {
+            bitmap.recycle();
+        }
+    }
 }
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.util.Log;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Compose page contents in a worker thread
+ * <p>
+ * Drawing background bitmap and text on canvas is too slow to be done in GL
+ * thread. The composer draws page content on a bitmap in its worker thread
+ * and keeps the finished bitmap by page number, GL thread only takes it out
+ * to upload texture when it is ready.
+ * </p>
+ * <p>
+ * A composed page is owned by GL thread after it is taken out by
+ * {@link #take(int, int)}, GL thread should give it back by
+ * {@link #recycle(Result)} after uploading. Composed pages are pooled with
+ * their bitmaps and reused for next compositions, together with canvas and
+ * paint, and they are kept in fixed slots instead of a map, so composing a
+ * page doesn't allocate anything in the steady state.
+ * </p>
+ * <p>
+ * A composed page is moved between slots, pool and GL thread only by atomic
+ * operations, it is recycled only by the thread which removes it, so it is
+ * never recycled twice.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public final class PageComposer {
+
+    private final static String TAG = "PageComposer";
+
+    // which stage of page content is composed
+    final static int STAGE_NONE = -1;
+    final static int STAGE_EMPTY = 0;
+    final static int STAGE_PREVIEW = 1;
+    final static int STAGE_FULL = 2;
+
+    // maximum number of pooled pages
+    private final static int MAX_POOL_SIZE = 3;
+    // slots of composed pages, page is kept in slot (number % SLOT_COUNT), it
+    // must be larger than the number of pages retained by renders
+    private final static int SLOT_COUNT = 8;
+    // pages are opaque, compose them with RGB_565 to be uploaded as RGB565
+    // textures which only need half memory of ARGB_8888
+    final static Bitmap.Config CONFIG = Bitmap.Config.RGB_565;
+
+    /**
+     * Foreground of page which is drawn on composed background
+     */
+    interface Foreground {
+
+        /**
+         * Draw page foreground on composed page content
+         * <p>Background is already drawn on canvas before calling it, it is
+         * called in worker thread of composer</p>
+         *
+         * @param canvas canvas of composed bitmap
+         * @param number page number
+         */
+        void composePage(Canvas canvas, int number);
+    }
+
+    /**
+     * Composed page
+     * <p>It owns its bitmap and is reused with it, fields are only changed
+     * by worker thread before it is put to slot</p>
+     */
+    final static class Result {
+        final Bitmap bitmap;
+        int number;
+        int stage;
+
+        Result(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final ExecutorService mThreadPool;
+    private final Foreground mForeground;
+    private final Handler mHandler;
+    private final LoadBitmapTask mTask;
+    // composed pages which are not taken by GL thread yet
+    private final AtomicReferenceArray<Result> mComposed;
+    // stages of pages which are being composed
+    private final ConcurrentHashMap<Integer, Integer> mPending;
+    // free pages to be reused for composing
+    private final ArrayBlockingQueue<Result> mFreeResults;
+    // drawing objects only used in worker thread
+    private final Canvas mCanvas;
+    private final Paint mBitmapPaint;
+    private final Rect mDstRect;
+    private volatile int mWidth;
+    private volatile int mHeight;
+
+    /**
+     * Constructor
+     *
+     * @param context Android context
+     * @param foreground foreground to draw on page
+     * @param handler handler to notify a page is composed
+     */
+    public PageComposer(Context context, Foreground foreground,
+                        Handler handler) {
+        mThreadPool = Executors.newSingleThreadExecutor();
+        mForeground = foreground;
+        mHandler = handler;
+        mTask = LoadBitmapTask.get(context);
+        mComposed = new AtomicReferenceArray<>(SLOT_COUNT);
+        mPending = new ConcurrentHashMap<>();
+        mFreeResults = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+        mCanvas = new Canvas();
+        mBitmapPaint = new Paint();
+        mBitmapPaint.setFilterBitmap(true);
+        mDstRect = new Rect();
+        mWidth = 0;
+        mHeight = 0;
+    }
+
+    /**
+     * Set size of composed bitmap
+     * <p>All composed bitmaps will be recycled if size is changed</p>
+     *
+     * @param width bitmap width
+     * @param height bitmap height
+     */
+    public void setSize(int width, int height) {
+        if (mWidth != width || mHeight != height) {
+            mWidth = width;
+            mHeight = height;
+            recycleAll();
+        }
+    }
+
+    /**
+     * Take out composed page if it is better than the drawn stage
+     * <p>If page isn't composed yet or a better stage can be composed, a new
+     * composition will be scheduled and the {@link PageRender#MSG_PAGE_COMPOSED}
+     * message will be sent after it is finished</p>
+     *
+     * @param number page number
+     * @param drawnStage stage of page content which is already drawn on texture
+     * @return composed page or null if there is not a better one
+     */
+    public Result take(int number, int drawnStage) {
+        final int slot = slotOf(number);
+        Result r = mComposed.get(slot);
+        if (r != null && r.number == number && r.stage > drawnStage &&
+            mComposed.compareAndSet(slot, r, null)) {
+            return r;
+        }
+
+        if (availableStage(number) > drawnStage) {
+            compose(number);
+        }
+        return null;
+    }
+
+    /**
+     * Recycle composed pages which are out of given range
+     *
+     * @param from the first page number to keep
+     * @param to the last page number to keep
+     */
+    public void retain(int from, int to) {
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            Result r = mComposed.get(i);
+            if (r != null && (r.number < from || r.number > to) &&
+                mComposed.compareAndSet(i, r, null)) {
+                recycle(r);
+            }
+        }
+    }
+
+    /**
+     * Release composer
+     * <p>Composer can't be used any more after it is released</p>
+     */
+    public void release() {
+        mThreadPool.shutdownNow();
+        recycleAll();
+    }
+
+    /**
+     * Give composed page back to composer
+     * <p>It will be reused if its bitmap has the current size, otherwise, the
+     * bitmap is recycled</p>
+     *
+     * @param r composed page
+     */
+    public void recycle(Result r) {
+        final Bitmap b = r.bitmap;
+        if (b.getWidth() != mWidth || b.getHeight() != mHeight ||
+            mThreadPool.isShutdown() || !mFreeResults.offer(r)) {
+            b.recycle();
+        }
+    }
+
+    /**
+     * Get a page with current size from pool or create a new one
+     *
+     * @param width bitmap width
+     * @param height bitmap height
+     * @return composed page object
+     */
+    private Result obtainResult(int width, int height) {
+        Result r;
+        while ((r = mFreeResults.poll()) != null) {
+            if (r.bitmap.getWidth() == width &&
+                r.bitmap.getHeight() == height) {
+                return r;
+            }
+            r.bitmap.recycle();
+        }
+
+        return new Result(Bitmap.createBitmap(width, height, CONFIG));
+    }
+
+    /**
+     * Recycle all composed and pooled bitmaps
+     */
+    private void recycleAll() {
+        for (int i = 0; i < SLOT_COUNT; ++i) {
+            Result r = mComposed.getAndSet(i, null);
+            if (r != null) {
+                r.bitmap.recycle();
+            }
+        }
+
+        Result r;
+        while ((r = mFreeResults.poll()) != null) {
+            r.bitmap.recycle();
+        }
+    }
+
+    /**
+     * Get slot of page
+     *
+     * @param number page number, could be negative
+     * @return index of slot
+     */
+    private static int slotOf(int number) {
+        return ((number % SLOT_COUNT) + SLOT_COUNT) % SLOT_COUNT;
+    }
+
+    /**
+     * Get the best stage which can be composed for page currently
+     *
+     * @param number page number
+     * @return stage of page
+     */
+    private int availableStage(int number) {
+        if (mTask.getBitmap(number) != null) {
+            return STAGE_FULL;
+        }
+        else if (mTask.getPreviewBitmap(number) != null) {
+            return STAGE_PREVIEW;
+        }
+        return STAGE_EMPTY;
+    }
+
+    /**
+     * Schedule a composition for page if there is no same or better one
+     * composed or being composed
+     *
+     * @param number page number
+     */
+    private void compose(final int number) {
+        final int stage = availableStage(number);
+        final Integer pending = mPending.get(number);
+        final Result r = mComposed.get(slotOf(number));
+        if ((pending != null && pending >= stage) ||
+            (r != null && r.number == number && r.stage >= stage) ||
+            mThreadPool.isShutdown()) {
+            return;
+        }
+
+        mPending.put(number, stage);
+        mThreadPool.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    composePage(number);
+                }
+                finally {
+                    mPending.remove(number);
+                }
+            }
+        });
+    }
+
+    /**
+     * Compose page content on a pooled bitmap
+     * <p>Called in worker thread, it is package private for allocation test
+     * </p>
+     *
+     * @param number page number
+     */
+    void composePage(int number) {
+        final int width = mWidth;
+        final int height = mHeight;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        final long start = System.currentTimeMillis();
+        final Result result = obtainResult(width, height);
+        final Canvas canvas = mCanvas;
+        canvas.setBitmap(result.bitmap);
+
+        // 1. draw background bitmap
+        // cached bitmaps won't be recycled by task while holding the lock
+        int stage;
+        synchronized (mTask.mRecycleLock) {
+            stage = STAGE_FULL;
+            Bitmap background = mTask.getBitmap(number);
+            if (background == null) {
+                stage = STAGE_PREVIEW;
+                background = mTask.getPreviewBitmap(number);
+            }
+
+            if (background != null) {
+                // bitmap is decoded with page size in LoadBitmapTask, only
+                // scale it when it is a small preview or still an old one
+                // decoded before surface changed
+                if (background.getWidth() == width &&
+                    background.getHeight() == height) {
+                    canvas.drawBitmap(background, 0, 0, null);
+                }
+                else {
+                    mDstRect.set(0, 0, width, height);
+                    canvas.drawBitmap(background, null, mDstRect,
+                                      mBitmapPaint);
+                }
+            }
+            else {
+                canvas.drawColor(Color.CYAN);
+                stage = STAGE_EMPTY;
+            }
+        }
+
+        // 2. draw page foreground
+        mForeground.composePage(canvas, number);
+        canvas.setBitmap(null);
+
+        // drop it if size is changed while composing
+        if (width != mWidth || height != mHeight) {
+            result.bitmap.recycle();
+            return;
+        }
+
+        // 3. put to slot unless there is a better one of the same page, a
+        // page of other number in slot is out of retained range, replace it
+        result.number = number;
+        result.stage = stage;
+        final int slot = slotOf(number);
+        while (true) {
+            final Result old = mComposed.get(slot);
+            if (old != null && old.number == number && old.stage > stage) {
+                recycle(result);
+                return;
+            }
+
+            if (mComposed.compareAndSet(slot, old, result)) {
+                if (old != null) {
+                    recycle(old);
+                }
+                break;
+            }
+        }
+
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, "Composed page " + number + ", stage: " + stage +
+                       ", cost: " + (System.currentTimeMillis() - start) +
+                       "ms");
+        }
+        mHandler.sendEmptyMessage(PageRender.MSG_PAGE_COMPOSED);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of decoded page bitmaps
+ * <p>
+ * Every decoded page is saved as a raw file which is composed by a fixed
+ * header and pixel rows copied from bitmap. Reloading a page only needs to
+ * map the file and copy pixels to a new bitmap, there is no decoding.
+ * </p>
+ * <pre>
+ * +-------+---------+-------+--------+--------+-------------+--------...
+ * | magic | version | width | height | config | pixel bytes | pixels
+ * +-------+---------+-------+--------+--------+-------------+--------...
+ * </pre>
+ * <p>
+ * When total size of cached files is greater than the given maximum size,
+ * the least recently used files will be deleted.
+ * </p>
+ *
+ * @author eschao
+ */
+
+public final class PageDiskCache {
+
+    private final static String TAG = "PageDiskCache";
+
+    private final static int MAGIC = 0x50475058; // PGPX
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 24;
+    private final static String SUFFIX = ".raw";
+    private final static String TMP_SUFFIX = ".tmp";
+
+    private final static int CONFIG_ARGB_8888 = 0;
+    private final static int CONFIG_RGB_565 = 1;
+
+    private final File mDir;
+    private final long mMaxBytes;
+
+    /**
+     * Constructor
+     *
+     * @param dir      directory to save cached files
+     * @param maxBytes maximum bytes of all cached files
+     */
+    public PageDiskCache(File dir, long maxBytes) {
+        mDir = dir;
+        mMaxBytes = maxBytes;
+        if (!mDir.exists() && !mDir.mkdirs()) {
+            Log.w(TAG, "Can't create cache directory: " + mDir);
+        }
+    }
+
+    /**
+     * Is there a cached file for given key?
+     *
+     * @param key cache key
+     * @return true if cached file exists
+     */
+    public boolean contains(String key) {
+        return new File(mDir, key + SUFFIX).exists();
+    }
+
+    /**
+     * Load bitmap from cache
+     *
+     * @param key cache key
+     * @return bitmap or null if there is no valid cached file
+     */
+    public Bitmap get(String key) {
+        File file = new File(mDir, key + SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+                                               0, channel.size());
+            buf.order(ByteOrder.nativeOrder());
+
+            // check header
+            if (channel.size() < HEADER_SIZE ||
+                buf.getInt() != MAGIC ||
+                buf.getInt() != VERSION) {
+                throw new IOException("Invalid cache file: " + file);
+            }
+
+            int width = buf.getInt();
+            int height = buf.getInt();
+            Bitmap.Config config = buf.getInt() == CONFIG_RGB_565 ?
+                                   Bitmap.Config.RGB_565 :
+                                   Bitmap.Config.ARGB_8888;
+            int size = buf.getInt();
+            if (width <= 0 || height <= 0 ||
+                size != channel.size() - HEADER_SIZE) {
+                throw new IOException("Corrupted cache file: " + file);
+            }
+
+            // copy pixels from mapped buffer
+            Bitmap b = Bitmap.createBitmap(width, height, config);
+            if (b.getRowBytes() * height != size) {
+                b.recycle();
+                throw new IOException("Unmatched pixel size: " + file);
+            }
+
+            b.copyPixelsFromBuffer(buf);
+            file.setLastModified(System.currentTimeMillis());
+            return b;
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Failed to load cache: " + key, e);
+            file.delete();
+            return null;
+        }
+        finally {
+            close(raf);
+        }
+    }
+
+    /**
+     * Save bitmap to cache
+     * <p>Only ARGB_8888 and RGB_565 bitmaps can be saved</p>
+     *
+     * @param key    cache key
+     * @param bitmap bitmap object
+     */
+    public void put(String key, Bitmap bitmap) {
+        final Bitmap.Config config = bitmap.getConfig();
+        if (config != Bitmap.Config.ARGB_8888 &&
+            config != Bitmap.Config.RGB_565) {
+            return;
+        }
+
+        // write to a temporary file and rename it to avoid a half written
+        // file is read by other thread
+        final int size = bitmap.getRowBytes() * bitmap.getHeight();
+        File tmp = new File(mDir, key + "." + Thread.currentThread().getId() +
+                                  TMP_SUFFIX);
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(tmp, "rw");
+            raf.setLength(HEADER_SIZE + size);
+            MappedByteBuffer buf = raf.getChannel().map(
+                                        FileChannel.MapMode.READ_WRITE,
+                                        0, HEADER_SIZE + size);
+            buf.order(ByteOrder.nativeOrder());
+            buf.putInt(MAGIC)
+               .putInt(VERSION)
+               .putInt(bitmap.getWidth())
+               .putInt(bitmap.getHeight())
+               .putInt(config == Bitmap.Config.RGB_565 ? CONFIG_RGB_565 :
+                                                        CONFIG_ARGB_8888)
+               .putInt(size);
+            bitmap.copyPixelsToBuffer(buf);
+            buf.force();
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Failed to save cache: " + key, e);
+            tmp.delete();
+            return;
+        }
+        finally {
+            close(raf);
+        }
+
+        if (!tmp.renameTo(new File(mDir, key + SUFFIX))) {
+            tmp.delete();
+            return;
+        }
+
+        trimToSize();
+    }
+
+    /**
+     * Delete all cached files
+     * <p>Temporary files being written by other threads are kept</p>
+     */
+    public synchronized void clear() {
+        File[] files = listCachedFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used files until total size is not greater
+     * than maximum size
+     */
+    private synchronized void trimToSize() {
+        File[] files = listCachedFiles();
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+
+        if (total <= mMaxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                long t1 = f1.lastModified();
+                long t2 = f2.lastModified();
+                return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && total > mMaxBytes; ++i) {
+            long len = files[i].length();
+            if (files[i].delete()) {
+                total -= len;
+            }
+        }
+    }
+
+    /**
+     * List cached files
+     * <p>Temporary files are not included, they are being written by other
+     * threads and will be renamed to cached files</p>
+     *
+     * @return cached files or null if directory can't be listed
+     */
+    private File[] listCachedFiles() {
+        return mDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File f) {
+                return f.getName().endsWith(SUFFIX);
+            }
+        });
+    }
+
+    /**
+     * Close file quietly
+     */
+    private static void close(RandomAccessFile raf) {
+        try {
+            if (raf != null) {
+                raf.close();
+            }
+        }
+        catch (IOException e) {
+        }
+    }
+}
@@ -15,25 +15,42 @@
  */
 package com.eschao.android.widget.sample.pageflip;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.opengl.GLSurfaceView;
 import android.opengl.GLSurfaceView.Renderer;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Message;
 import android.preference.PreferenceManager;
 import android.util.Log;
+import android.view.Choreographer;
 
 import com.eschao.android.widget.pageflip.PageFlip;
 import com.eschao.android.widget.pageflip.PageFlipException;
 
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 /**
  * Page flip view
+ * <p>
+ * PageFlip and page render are only touched in GL thread. Touch events and
+ * other requests from main thread are posted as commands to a lock-free
+ * queue and applied in order before drawing the next frame, so main thread
+ * never waits for a frame being drawn and GL thread never waits for main
+ * thread.
+ * </p>
+ * <p>
+ * Animating frames are requested by {@link Choreographer} on API 16 and
+ * above, animation is stepped to the vsync time of frame instead of the time
+ * when GL thread happens to draw it.
+ * </p>
  *
  * @author eschao
  */
@@ -42,12 +59,95 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
 
     private final static String TAG = "PageFlipView";
 
+    // commands posted from main thread
+    private final static int CMD_FINGER_DOWN = 0;
+    private final static int CMD_FINGER_MOVE = 1;
+    private final static int CMD_FINGER_UP = 2;
+    private final static int CMD_AUTO_PAGE = 3;
+    private final static int CMD_RIFFLE = 4;
+    private final static int CMD_OVERDRAW = 5;
+
+    /**
+     * Request animating frames on vsync
+     * <p>Choreographer is got in main thread, callbacks can be posted from GL
+     * thread and are called in main thread</p>
+     */
+    @TargetApi(16)
+    private final class VsyncCallback implements Choreographer.FrameCallback {
+
+        private final Choreographer mChoreographer;
+        private final AtomicBoolean mIsPending;
+
+        VsyncCallback() {
+            mChoreographer = Choreographer.getInstance();
+            mIsPending = new AtomicBoolean(false);
+        }
+
+        /**
+         * Request a frame on the next vsync
+         */
+        void request() {
+            if (mIsPending.compareAndSet(false, true)) {
+                mChoreographer.postFrameCallback(this);
+            }
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            mIsPending.set(false);
+            mVsyncNanos.set(frameTimeNanos);
+            requestRender();
+        }
+    }
+
+    /**
+     * Command posted to GL thread, it is immutable after posting
+     * <p>Finger commands carry time of the touch event, not the posting time,
+     * since touch prediction needs real intervals of samples</p>
+     */
+    private final static class Command {
+        final int type;
+        final float x;
+        final float y;
+        final float velocityX;
+        final float velocityY;
+        final long timeNanos;
+        final int arg;
+
+        Command(int type, float x, float y, float velocityX, float velocityY,
+                long timeNanos, int arg) {
+            this.type = type;
+            this.x = x;
+            this.y = y;
+            this.velocityX = velocityX;
+            this.velocityY = velocityY;
+            this.timeNanos = timeNanos;
+            this.arg = arg;
+        }
+    }
+
     int mPageNo;
-    int mDuration;
+    volatile int mDuration;
     Handler mHandler;
     PageFlip mPageFlip;
     PageRender mPageRender;
-    ReentrantLock mDrawLock;
+    // settings read by main thread, PageFlip is only touched in GL thread
+    private final int mPixelsOfMesh;
+    private boolean mIsAutoPage;
+    private boolean mIsOverdrawCounterEnabled;
+    // commands from main thread which are not applied by GL thread yet
+    private final ConcurrentLinkedQueue<Command> mCommands;
+    // the longest time main thread spent on posting a command, it is logged
+    // to measure how long main thread is stalled by GL thread
+    private long mMaxPostNanos;
+    // the last logged overdraw ratio of flip frame
+    private float mOverdrawRatio;
+    // vsync time of the requested frame, 0 if frame isn't requested by vsync
+    private final AtomicLong mVsyncNanos;
+    // time of the last drawn frame, frame time never goes back
+    private long mFrameNanos;
+    // vsync requester, null if choreographer isn't supported
+    private final VsyncCallback mVsync;
 
     public PageFlipView(Context context) {
         super(context);
@@ -68,12 +168,21 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
                  .setShadowWidthOfFoldEdges(5, 60, 0.3f)
                  .setShadowWidthOfFoldBase(5, 80, 0.4f)
                  .setPixelsOfMesh(pixelsOfMesh)
+                 .enableFrameCache(true)
                  .enableAutoPage(isAuto);
         setEGLContextClientVersion(2);
 
         // init others
+        mPixelsOfMesh = mPageFlip.getPixelsOfMesh();
+        mIsAutoPage = mPageFlip.isAutoPageEnabled();
+        mIsOverdrawCounterEnabled = false;
         mPageNo = 0;
-        mDrawLock = new ReentrantLock();
+        mCommands = new ConcurrentLinkedQueue<>();
+        mMaxPostNanos = 0;
+        mOverdrawRatio = 0;
+        mVsyncNanos = new AtomicLong(0);
+        mFrameNanos = 0;
+        mVsync = Build.VERSION.SDK_INT >= 16 ? new VsyncCallback() : null;
         mPageRender = new SinglePageRender(context, mPageFlip,
                                            mHandler, mPageNo, this);
         // configure render
@@ -87,7 +196,7 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      * @return true if auto page mode enabled
      */
     public boolean isAutoPageEnabled() {
-        return mPageFlip.isAutoPageEnabled();
+        return mIsAutoPage;
     }
 
     /**
@@ -96,33 +205,8 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      * @param enable true is enable
      */
     public void enableAutoPage(boolean enable) {
-        if (mPageFlip.enableAutoPage(enable)) {
-            try {
-                mDrawLock.lock();
-                if (mPageFlip.getSecondPage() != null &&
-                    mPageRender instanceof SinglePageRender) {
-                    mPageRender = new DoublePagesRender(getContext(),
-                                                        mPageFlip,
-                                                        mHandler,
-                                                        mPageNo);
-                    mPageRender.onSurfaceChanged(mPageFlip.getSurfaceWidth(),
-                                                 mPageFlip.getSurfaceHeight());
-                }
-                else if (mPageFlip.getSecondPage() == null &&
-                         mPageRender instanceof DoublePagesRender) {
-                    mPageRender = new SinglePageRender(getContext(),
-                                                       mPageFlip,
-                                                       mHandler,
-                                                       mPageNo, this);
-                    mPageRender.onSurfaceChanged(mPageFlip.getSurfaceWidth(),
-                                                 mPageFlip.getSurfaceHeight());
-                }
-                requestRender();
-            }
-            finally {
-                mDrawLock.unlock();
-            }
-        }
+        mIsAutoPage = enable;
+        postCommand(new Command(CMD_AUTO_PAGE, 0, 0, 0, 0, 0, enable ? 1 : 0));
     }
 
     /**
@@ -149,7 +233,38 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      * @return pixels of mesh
      */
     public int getPixelsOfMesh() {
-        return mPageFlip.getPixelsOfMesh();
+        return mPixelsOfMesh;
+    }
+
+    /**
+     * Riffle to given page
+     * <p>Skipped pages are flipped rapidly with low quality and the whole
+     * riffle takes about the animate duration</p>
+     *
+     * @param pageNo target page number
+     */
+    public void riffleTo(int pageNo) {
+        postCommand(new Command(CMD_RIFFLE, 0, 0, 0, 0, 0, pageNo));
+    }
+
+    /**
+     * Enable/Disable overdraw counter of flip frame
+     * <p>Counted overdraw ratio is logged, it slows down flipping</p>
+     *
+     * @param enable true if enable
+     */
+    public void enableOverdrawCounter(boolean enable) {
+        mIsOverdrawCounterEnabled = enable;
+        postCommand(new Command(CMD_OVERDRAW, 0, 0, 0, 0, 0, enable ? 1 : 0));
+    }
+
+    /**
+     * Is overdraw counter enabled?
+     *
+     * @return true if enabled
+     */
+    public boolean isOverdrawCounterEnabled() {
+        return mIsOverdrawCounterEnabled;
     }
 
     /**
@@ -157,14 +272,14 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      *
      * @param x finger x coordinate
      * @param y finger y coordinate
+     * @param eventTimeNanos time of touch event in nanoseconds, in the same
+     *                       time base as {@link System#nanoTime()}
      */
-    public void onFingerDown(float x, float y) {
-        // if the animation is going, we should ignore this event to avoid
-        // mess drawing on screen
-        if (!mPageFlip.isAnimating() &&
-            mPageFlip.getFirstPage() != null) {
-            mPageFlip.onFingerDown(x, y);
-        }
+    public void onFingerDown(float x, float y, long eventTimeNanos) {
+        // finger down doesn't change anything on screen, it is applied with
+        // the following moving or up command instead of drawing a frame
+        postCommand(new Command(CMD_FINGER_DOWN, x, y, 0, 0,
+                                eventTimeNanos, 0), false);
     }
 
     /**
@@ -172,28 +287,12 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      *
      * @param x finger x coordinate
      * @param y finger y coordinate
+     * @param eventTimeNanos time of touch event in nanoseconds, in the same
+     *                       time base as {@link System#nanoTime()}
      */
-    public void onFingerMove(float x, float y) {
-        if (mPageFlip.isAnimating()) {
-            // nothing to do during animating
-        }
-        else if (mPageFlip.canAnimate(x, y)) {
-            // if the point is out of current page, try to start animating
-            onFingerUp(x, y);
-        }
-        // move page by finger
-        else if (mPageFlip.onFingerMove(x, y)) {
-            try {
-                mDrawLock.lock();
-                if (mPageRender != null &&
-                    mPageRender.onFingerMove(x, y)) {
-                    requestRender();
-                }
-            }
-            finally {
-                mDrawLock.unlock();
-            }
-        }
+    public void onFingerMove(float x, float y, long eventTimeNanos) {
+        postCommand(new Command(CMD_FINGER_MOVE, x, y, 0, 0,
+                                eventTimeNanos, 0));
     }
 
     /**
@@ -203,19 +302,163 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      * @param y finger y coordinate
      */
     public void onFingerUp(float x, float y) {
-        if (!mPageFlip.isAnimating()) {
-            mPageFlip.onFingerUp(x, y, mDuration);
-            try {
-                mDrawLock.lock();
-                if (mPageRender != null &&
-                    mPageRender.onFingerUp(x, y)) {
-                    requestRender();
-                }
+        onFingerUp(x, y, 0, 0);
+    }
+
+    /**
+     * Handle finger up event with finger velocity and start animating if need
+     *
+     * @param x finger x coordinate
+     * @param y finger y coordinate
+     * @param velocityX x velocity of finger in pixels per second
+     * @param velocityY y velocity of finger in pixels per second
+     */
+    public void onFingerUp(float x, float y, float velocityX, float velocityY) {
+        postCommand(new Command(CMD_FINGER_UP, x, y, velocityX, velocityY,
+                                0, 0));
+    }
+
+    /**
+     * Post command to GL thread and request a frame to apply it
+     * <p>Called in main thread, it never blocks on drawing frame</p>
+     *
+     * @param cmd command object
+     */
+    private void postCommand(Command cmd) {
+        postCommand(cmd, true);
+    }
+
+    /**
+     * Post command to GL thread
+     * <p>Called in main thread, it never blocks on drawing frame</p>
+     *
+     * @param cmd command object
+     * @param needsFrame true if request a frame to apply command now
+     */
+    private void postCommand(Command cmd, boolean needsFrame) {
+        final long start = System.nanoTime();
+        mCommands.offer(cmd);
+        if (needsFrame) {
+            requestRender();
+        }
+
+        final long cost = System.nanoTime() - start;
+        if (cost > mMaxPostNanos) {
+            mMaxPostNanos = cost;
+            Log.d(TAG, "Max stall of posting command: " + cost / 1000 + "us");
+        }
+    }
+
+    /**
+     * Apply all posted commands in order
+     * <p>Called in GL thread before drawing frame</p>
+     */
+    private void applyCommands() {
+        Command cmd;
+        while ((cmd = mCommands.poll()) != null) {
+            switch (cmd.type) {
+                case CMD_FINGER_DOWN:
+                case CMD_FINGER_MOVE:
+                case CMD_FINGER_UP:
+                    // pages are not created until surface is changed
+                    if (mPageFlip.getFirstPage() != null) {
+                        applyFingerCommand(cmd);
+                    }
+                    break;
+
+                case CMD_AUTO_PAGE:
+                    applyAutoPage(cmd.arg != 0);
+                    break;
+
+                case CMD_RIFFLE:
+                    mPageRender.riffleTo(cmd.arg, mDuration);
+                    break;
+
+                case CMD_OVERDRAW:
+                    mPageFlip.enableOverdrawCounter(cmd.arg != 0);
+                    break;
+
+                default:
+                    break;
             }
-            finally {
-                mDrawLock.unlock();
+        }
+    }
+
+    /**
+     * Apply finger event to PageFlip and page render
+     *
+     * @param cmd finger command
+     */
+    private void applyFingerCommand(Command cmd) {
+        // finger down in animating is handled by PageFlip, the animation can
+        // be grabbed by moving or the next flip is queued by clicking
+        if (cmd.type == CMD_FINGER_DOWN) {
+            mPageFlip.onFingerDown(cmd.x, cmd.y, cmd.timeNanos);
+        }
+        else if (cmd.type == CMD_FINGER_MOVE &&
+                 !mPageFlip.canAnimate(cmd.x, cmd.y)) {
+            // move page by finger
+            if (mPageFlip.onFingerMove(cmd.x, cmd.y, cmd.timeNanos)) {
+                mPageRender.onFingerMove(cmd.x, cmd.y);
             }
         }
+        // finger is up or the point is out of current page, try to start
+        // animating
+        else {
+            mPageFlip.onFingerUp(cmd.x, cmd.y, mDuration,
+                                 cmd.velocityX, cmd.velocityY);
+            mPageRender.onFingerUp(cmd.x, cmd.y);
+        }
+    }
+
+    /**
+     * Enable/Disable auto page mode and switch page render if need
+     *
+     * @param enable true is enable
+     */
+    private void applyAutoPage(boolean enable) {
+        if (!mPageFlip.enableAutoPage(enable)) {
+            return;
+        }
+
+        if (mPageFlip.getSecondPage() != null &&
+            mPageRender instanceof SinglePageRender) {
+            mPageRender.release();
+            mPageRender = new DoublePagesRender(getContext(),
+                                                mPageFlip,
+                                                mHandler,
+                                                mPageNo);
+            mPageRender.onSurfaceChanged(mPageFlip.getSurfaceWidth(),
+                                         mPageFlip.getSurfaceHeight());
+        }
+        else if (mPageFlip.getSecondPage() == null &&
+                 mPageRender instanceof DoublePagesRender) {
+            mPageRender.release();
+            mPageRender = new SinglePageRender(getContext(),
+                                               mPageFlip,
+                                               mHandler,
+                                               mPageNo, this);
+            mPageRender.onSurfaceChanged(mPageFlip.getSurfaceWidth(),
+                                         mPageFlip.getSurfaceHeight());
+        }
+    }
+
+    /**
+     * Pause rendering
+     * <p>EGL context is destroyed when view is paused, PageFlip releases its
+     * page textures and shared GL resources in GL thread before that, they
+     * are created again in {@link #onSurfaceCreated(GL10, EGLConfig)} after
+     * resuming. Queued event is run before GL thread handles pausing</p>
+     */
+    @Override
+    public void onPause() {
+        queueEvent(new Runnable() {
+            @Override
+            public void run() {
+                mPageFlip.release();
+            }
+        });
+        super.onPause();
     }
 
     /**
@@ -225,14 +468,34 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
      */
     @Override
     public void onDrawFrame(GL10 gl) {
-        try {
-            mDrawLock.lock();
-            if (mPageRender != null) {
-                mPageRender.onDrawFrame();
-            }
+        // 1. apply commands posted from main thread
+        applyCommands();
+
+        // 2. draw frame at vsync time if it is requested by choreographer,
+        // otherwise, at the current time
+        long frameNanos = mVsyncNanos.getAndSet(0);
+        if (frameNanos == 0) {
+            frameNanos = System.nanoTime();
+        }
+        mFrameNanos = Math.max(mFrameNanos, frameNanos);
+        mPageRender.onDrawFrame(mFrameNanos);
+
+        // log overdraw of flip frame if it is counted
+        final float overdraw = mPageFlip.getOverdrawRatio();
+        if (overdraw > 0 && overdraw != mOverdrawRatio) {
+            mOverdrawRatio = overdraw;
+            Log.d(TAG, "Overdraw of flip frame: " + overdraw);
         }
-        finally {
-            mDrawLock.unlock();
+
+        // animation is stepped in render loop, request the next frame on
+        // vsync, or directly in GL thread if choreographer isn't supported
+        if (mPageRender.isAnimating()) {
+            if (mVsync != null) {
+                mVsync.request();
+            }
+            else {
+                requestRender();
+            }
         }
     }
 
@@ -301,19 +564,9 @@ public class PageFlipView extends GLSurfaceView implements Renderer {
         mHandler = new Handler() {
             public void handleMessage(Message msg) {
                 switch (msg.what) {
-                    case PageRender.MSG_ENDED_DRAWING_FRAME:
-                        try {
-                            mDrawLock.lock();
-                            // notify page render to handle ended drawing
-                            // message
-                            if (mPageRender != null &&
-                                mPageRender.onEndedDrawing(msg.arg1)) {
-                                requestRender();
-                            }
-                        }
-                        finally {
-                            mDrawLock.unlock();
-                        }
+                    // a page is composed in worker thread, render it
+                    case PageRender.MSG_PAGE_COMPOSED:
+                        requestRender();
                         break;
 
                     default:
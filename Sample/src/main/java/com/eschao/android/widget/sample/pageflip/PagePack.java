@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+/**
+ * Page pack file format
+ * <p>
+ * A page pack puts all pages of a document into one file so that opening a
+ * document only needs to open and map one file. It is composed by a fixed
+ * header, a page index and page blocks. All numbers are big endian.
+ * </p>
+ * <pre>
+ * Header (32 bytes):
+ * +-------+---------+--------+-------+-------+--------+--------+----------+
+ * | magic | version | format | pages | width | height | stride | reserved |
+ * +-------+---------+--------+-------+-------+--------+--------+----------+
+ *
+ * Index (12 bytes for every page):
+ * +--------------------+--------------+
+ * | block offset(long) | length(int)  |
+ * +--------------------+--------------+
+ *
+ * Blocks:
+ * +---------+---------+-----
+ * | page 0  | page 1  | ...
+ * +---------+---------+-----
+ * </pre>
+ * <ul>
+ *     <li>{@link #FORMAT_ARGB_8888} and {@link #FORMAT_RGB_565}: every block
+ *     is raw pixel rows with the same width and height, the stride is the
+ *     block size. Pixel bytes are same with Bitmap#copyPixelsToBuffer, that
+ *     means RGBA bytes for ARGB_8888 and little endian shorts for RGB_565
+ *     </li>
+ *     <li>{@link #FORMAT_ETC1}: every block is ETC1 compressed texture data
+ *     without PKM header, the stride is the size of compressed data. It can
+ *     be uploaded by glCompressedTexImage2D without decoding</li>
+ *     <li>{@link #FORMAT_ENCODED}: every block is an encoded image file like
+ *     JPEG or PNG, the stride is 0 and block length is varied</li>
+ * </ul>
+ *
+ * @author eschao
+ */
+public final class PagePack {
+
+    public final static int MAGIC = 0x5050414B; // PPAK
+    public final static int VERSION = 1;
+
+    public final static int FORMAT_ARGB_8888 = 0;
+    public final static int FORMAT_RGB_565 = 1;
+    public final static int FORMAT_ENCODED = 2;
+    public final static int FORMAT_ETC1 = 3;
+
+    public final static int HEADER_SIZE = 32;
+    public final static int INDEX_ENTRY_SIZE = 12;
+
+    private PagePack() {
+    }
+
+    /**
+     * Get bytes of a raw page block
+     *
+     * @param format page format
+     * @param width page width
+     * @param height page height
+     * @return bytes of block, 0 if blocks are encoded
+     * @throws IllegalArgumentException if format is unknown or block is
+     *                                  larger than 2GB
+     */
+    public static int strideOf(int format, int width, int height) {
+        final long stride;
+        switch (format) {
+            case FORMAT_ARGB_8888:
+                stride = (long)width * height * 4;
+                break;
+            case FORMAT_RGB_565:
+                stride = (long)width * height * 2;
+                break;
+            case FORMAT_ETC1:
+                // 8 bytes for every 4x4 pixels block
+                stride = (long)((width + 3) / 4) * ((height + 3) / 4) * 8;
+                break;
+            case FORMAT_ENCODED:
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+
+        if (stride > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too large page: " + width +
+                                               "x" + height);
+        }
+        return (int)stride;
+    }
+
+    /**
+     * Get format of given name
+     *
+     * @param name format name: argb8888, rgb565, etc1 or encoded
+     * @return page format
+     * @throws IllegalArgumentException if name is unknown
+     */
+    public static int formatOf(String name) {
+        if ("argb8888".equals(name)) {
+            return FORMAT_ARGB_8888;
+        }
+        else if ("rgb565".equals(name)) {
+            return FORMAT_RGB_565;
+        }
+        else if ("etc1".equals(name)) {
+            return FORMAT_ETC1;
+        }
+        else if ("encoded".equals(name)) {
+            return FORMAT_ENCODED;
+        }
+        throw new IllegalArgumentException("Unknown format: " + name);
+    }
+
+    /**
+     * Get offset of index entry for given page
+     *
+     * @param number page number
+     * @return offset of index entry in file
+     */
+    static long indexOffsetOf(int number) {
+        return HEADER_SIZE + (long)number * INDEX_ENTRY_SIZE;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.opengl.ETC1;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Page pack reader
+ * <p>
+ * The whole pack file is mapped into memory once, any page can be got by its
+ * offset in index without opening other files. The file size is limited to
+ * 2GB since it is mapped by one buffer.
+ * </p>
+ * <p>See {@link PagePack} for file format</p>
+ *
+ * @author eschao
+ */
+public final class PagePackReader implements PageSource, Closeable {
+
+    private final static String TAG = "PagePackReader";
+
+    private final RandomAccessFile mFile;
+    private final MappedByteBuffer mBuf;
+    private final int mFormat;
+    private final int mPageCount;
+    private final int mWidth;
+    private final int mHeight;
+    // bytes of raw block, 0 for encoded blocks
+    private final int mStride;
+    // blocks must be after header and index
+    private final long mBlocksOffset;
+
+    /**
+     * Constructor
+     *
+     * @param file page pack file
+     * @throws IOException if fail to open and map file or it is not a valid
+     *                     page pack
+     */
+    public PagePackReader(File file) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        try {
+            // 1. map the whole file
+            FileChannel channel = mFile.getChannel();
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Page pack is larger than 2GB: " + file);
+            }
+
+            mBuf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < PagePack.HEADER_SIZE ||
+                mBuf.getInt(0) != PagePack.MAGIC ||
+                mBuf.getInt(4) != PagePack.VERSION) {
+                throw new IOException("Invalid page pack: " + file);
+            }
+
+            // 2. check header
+            mFormat = mBuf.getInt(8);
+            mPageCount = mBuf.getInt(12);
+            mWidth = mBuf.getInt(16);
+            mHeight = mBuf.getInt(20);
+            if (mWidth <= 0 || mHeight <= 0) {
+                throw new IOException("Invalid page size " + mWidth + "x" +
+                                      mHeight + ": " + file);
+            }
+
+            try {
+                mStride = PagePack.strideOf(mFormat, mWidth, mHeight);
+            }
+            catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage() + ": " + file);
+            }
+
+            if (mBuf.getInt(24) != mStride) {
+                throw new IOException("Stride " + mBuf.getInt(24) +
+                                      " doesn't match page size, expected " +
+                                      mStride + ": " + file);
+            }
+
+            // 3. check index is in file, every index entry is checked when
+            // its page is read
+            mBlocksOffset = PagePack.indexOffsetOf(mPageCount);
+            if (mPageCount < 0 || mBlocksOffset > size) {
+                throw new IOException("Truncated page index: " + file);
+            }
+        }
+        catch (IOException e) {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getPageCount() {
+        return mPageCount;
+    }
+
+    /**
+     * Get page width
+     *
+     * @return page width
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * Get page height
+     *
+     * @return page height
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Get page format
+     *
+     * @return page format, see {@link PagePack}
+     */
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * Get data buffer of given page without copying
+     * <p>For raw formats, the buffer can be directly uploaded to OpenGL</p>
+     *
+     * @param number page number
+     * @return buffer of page data
+     * @throws IOException if index entry of page is corrupted
+     */
+    public ByteBuffer getPageBuffer(int number) throws IOException {
+        if (number < 0 || number >= mPageCount) {
+            throw new IndexOutOfBoundsException("Page: " + number);
+        }
+
+        // check block is in file and raw block has the same size of stride
+        final int index = (int)PagePack.indexOffsetOf(number);
+        final long offset = mBuf.getLong(index);
+        final int length = mBuf.getInt(index + 8);
+        if (offset < mBlocksOffset || length < 0 ||
+            offset + length > mBuf.capacity()) {
+            throw new IOException("Page " + number + " is out of file: " +
+                                  "offset=" + offset + ", length=" + length +
+                                  ", file size=" + mBuf.capacity());
+        }
+
+        if (mStride > 0 && length != mStride) {
+            throw new IOException("Page " + number + " has " + length +
+                                  " bytes, expected " + mStride);
+        }
+
+        ByteBuffer buf = mBuf.duplicate();
+        buf.position((int)offset);
+        buf.limit((int)offset + length);
+        return buf.slice();
+    }
+
+    @Override
+    public Bitmap getPage(int number, int width, int height) {
+        final ByteBuffer buf;
+        try {
+            buf = getPageBuffer(number);
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Can't read page " + number, e);
+            return null;
+        }
+
+        switch (mFormat) {
+            case PagePack.FORMAT_ARGB_8888:
+            case PagePack.FORMAT_RGB_565:
+                Bitmap b = Bitmap.createBitmap(mWidth, mHeight,
+                        mFormat == PagePack.FORMAT_RGB_565 ?
+                        Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+                b.copyPixelsFromBuffer(buf);
+                return b;
+
+            case PagePack.FORMAT_ETC1:
+                // decode to RGB_565 bitmap, renderer which supports
+                // compressed texture should upload page buffer directly
+                ByteBuffer pixels = ByteBuffer.allocateDirect(
+                                            mWidth * mHeight * 2)
+                                              .order(ByteOrder.nativeOrder());
+                ETC1.decodeImage(buf, pixels, mWidth, mHeight, 2, mWidth * 2);
+                Bitmap eb = Bitmap.createBitmap(mWidth, mHeight,
+                                                Bitmap.Config.RGB_565);
+                eb.copyPixelsFromBuffer(pixels);
+                return eb;
+
+            case PagePack.FORMAT_ENCODED:
+                // BitmapFactory can't decode from buffer, copy it out
+                byte[] data = new byte[buf.remaining()];
+                buf.get(data);
+
+                BitmapFactory.Options opts = new BitmapFactory.Options();
+                opts.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, opts);
+                opts.inSampleSize = LoadBitmapTask.computeSampleSize(
+                                        opts.outWidth, opts.outHeight,
+                                        width, height);
+                opts.inJustDecodeBounds = false;
+                return BitmapFactory.decodeByteArray(data, 0, data.length,
+                                                     opts);
+
+            default:
+                Log.w(TAG, "Unknown page format: " + mFormat);
+                return null;
+        }
+    }
+
+    /**
+     * Close file
+     * <p>The mapped buffer is still valid until it is garbage collected</p>
+     */
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * Page pack writer
+ * <p>
+ * It only depends on java so that it can be used as a command line tool to
+ * build page pack from page files:
+ * </p>
+ * <pre>
+ * java PagePackWriter out.ppk format width height page1 page2 ...
+ * </pre>
+ * <ul>
+ *     <li>encoded: page files are JPEG or PNG images</li>
+ *     <li>argb8888, rgb565: page files are raw pixels with the page size,
+ *     for example: {@code ffmpeg -i p1.jpg -s 720x1280 -pix_fmt rgba -f
+ *     rawvideo p1.rgba}, use rgb565le pixel format for rgb565</li>
+ *     <li>etc1: page files are ETC1 PKM files or raw ETC1 data, for example:
+ *     {@code etc1tool p1.png --encode -o p1.pkm}</li>
+ * </ul>
+ * <p>See {@link PagePack} for file format</p>
+ *
+ * @author eschao
+ */
+public final class PagePackWriter implements Closeable {
+
+    private final static int PKM_HEADER_SIZE = 16;
+
+    private final RandomAccessFile mFile;
+    private final int mFormat;
+    private final int mStride;
+    private final int mPageCount;
+    private final long[] mOffsets;
+    private final int[] mLengths;
+    private int mNext;
+
+    /**
+     * Constructor
+     *
+     * @param out output file
+     * @param format page format, see {@link PagePack}
+     * @param width page width
+     * @param height page height
+     * @param pageCount page count
+     * @throws IOException if fail to create file
+     */
+    public PagePackWriter(File out, int format, int width, int height,
+                          int pageCount) throws IOException {
+        if (width <= 0 || height <= 0 || pageCount <= 0) {
+            throw new IllegalArgumentException("Invalid page size or count");
+        }
+
+        mFormat = format;
+        mStride = PagePack.strideOf(format, width, height);
+        mPageCount = pageCount;
+        mOffsets = new long[pageCount];
+        mLengths = new int[pageCount];
+        mNext = 0;
+
+        mFile = new RandomAccessFile(out, "rw");
+        mFile.setLength(0);
+        mFile.writeInt(PagePack.MAGIC);
+        mFile.writeInt(PagePack.VERSION);
+        mFile.writeInt(format);
+        mFile.writeInt(pageCount);
+        mFile.writeInt(width);
+        mFile.writeInt(height);
+        mFile.writeInt(mStride);
+        mFile.writeInt(0);
+
+        // reserve index, it will be filled when closing
+        mFile.seek(PagePack.indexOffsetOf(pageCount));
+    }
+
+    /**
+     * Add next page
+     *
+     * @param data page data, raw pixels or encoded image
+     * @throws IOException if fail to write file
+     */
+    public void addPage(byte[] data) throws IOException {
+        if (mNext >= mPageCount) {
+            throw new IllegalStateException("Too many pages: " + mPageCount);
+        }
+
+        if (mFormat != PagePack.FORMAT_ENCODED && data.length != mStride) {
+            throw new IllegalArgumentException("Raw page must be " + mStride +
+                                               " bytes: " + data.length);
+        }
+
+        mOffsets[mNext] = mFile.getFilePointer();
+        mLengths[mNext] = data.length;
+        mFile.write(data);
+        mNext++;
+    }
+
+    /**
+     * Write page index and close file
+     *
+     * @throws IOException if fail to write file or pages are not enough
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (mNext != mPageCount) {
+                throw new IOException("Expected " + mPageCount +
+                                      " pages, but only " + mNext);
+            }
+
+            mFile.seek(PagePack.indexOffsetOf(0));
+            for (int i = 0; i < mPageCount; ++i) {
+                mFile.writeLong(mOffsets[i]);
+                mFile.writeInt(mLengths[i]);
+            }
+        }
+        finally {
+            mFile.close();
+        }
+    }
+
+    /**
+     * Build page pack from page files
+     *
+     * @param args out format width height files...
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 5) {
+            System.err.println("Usage: PagePackWriter <out> " +
+                               "<argb8888|rgb565|etc1|encoded> <width> " +
+                               "<height> <page files...>");
+            System.exit(1);
+        }
+
+        final int format = PagePack.formatOf(args[1]);
+        final int count = args.length - 4;
+        PagePackWriter writer = new PagePackWriter(new File(args[0]),
+                                                   format,
+                                                   Integer.parseInt(args[2]),
+                                                   Integer.parseInt(args[3]),
+                                                   count);
+        try {
+            for (int i = 0; i < count; ++i) {
+                byte[] data = readFile(new File(args[i + 4]));
+                if (format == PagePack.FORMAT_ETC1) {
+                    data = stripPkmHeader(data);
+                }
+                writer.addPage(data);
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Strip header of PKM file to get raw ETC1 data
+     *
+     * @param data content of PKM file or raw ETC1 data
+     * @return raw ETC1 data
+     */
+    static byte[] stripPkmHeader(byte[] data) {
+        if (data.length < PKM_HEADER_SIZE ||
+            data[0] != 'P' || data[1] != 'K' || data[2] != 'M' ||
+            data[3] != ' ') {
+            return data;
+        }
+
+        byte[] raw = new byte[data.length - PKM_HEADER_SIZE];
+        System.arraycopy(data, PKM_HEADER_SIZE, raw, 0, raw.length);
+        return raw;
+    }
+
+    /**
+     * Read all bytes of file
+     */
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int)file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int n = 0;
+            while (n < data.length) {
+                int r = in.read(data, n, data.length - n);
+                if (r < 0) {
+                    throw new IOException("Unexpected end of file: " + file);
+                }
+                n += r;
+            }
+        }
+        finally {
+            in.close();
+        }
+        return data;
+    }
+}
@@ -18,36 +18,78 @@ package com.eschao.android.widget.sample.pageflip;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
 import android.os.Handler;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 
+import com.eschao.android.widget.pageflip.OnPageFlipEndedListener;
 import com.eschao.android.widget.pageflip.OnPageFlipListener;
+import com.eschao.android.widget.pageflip.Page;
 import com.eschao.android.widget.pageflip.PageFlip;
+import com.eschao.android.widget.pageflip.PageFlipState;
 
 /**
  * Abstract Page Render
+ * <p>
+ * Page contents are composed by {@link PageComposer} in worker threads, GL
+ * thread only uploads the composed bitmaps to textures. A small placeholder
+ * is uploaded if page is still being composed.
+ * </p>
  *
  * @author eschao
  */
 
-public abstract class PageRender implements OnPageFlipListener {
+public abstract class PageRender implements PageComposer.Foreground,
+                                            OnPageFlipListener,
+                                            OnPageFlipEndedListener {
 
-    public final static int MSG_ENDED_DRAWING_FRAME = 1;
+    public final static int MSG_PAGE_COMPOSED = 2;
     private final static String TAG = "PageRender";
 
     final static int DRAW_MOVING_FRAME = 0;
     final static int DRAW_ANIMATING_FRAME = 1;
     final static int DRAW_FULL_PAGE = 2;
 
+    final static int FIRST_TEXTURE = 0;
+    final static int SECOND_TEXTURE = 1;
+    final static int BACK_TEXTURE = 2;
+
     final static int MAX_PAGES = 30;
+    private final static int PLACEHOLDER_SIZE = 8;
+    private final static int[] RIFFLE_COLORS = {
+            0xFF5D4037, 0xFF455A64, 0xFF37474F, 0xFF4E342E };
 
     int mPageNo;
     int mDrawCommand;
-    Bitmap mBitmap;
-    Canvas mCanvas;
-    Bitmap mBackgroundBitmap;
     Context mContext;
     Handler mHandler;
     PageFlip mPageFlip;
+    PageComposer mComposer;
+    // tiny bitmap uploaded when page is still being composed
+    Bitmap mPlaceholder;
+    // the stage drawn on texture for every page number, only used in GL thread
+    SparseIntArray mDrawnStages;
+
+    // paints and measured texts for composing page, they are only used in
+    // the composer thread and reused for every page to avoid allocations
+    private final Paint mTextPaint;
+    private final Paint mHintPaint;
+    private final SparseArray<PageText> mPageTexts;
+
+    // tiny solid color bitmap for riffle preview, only used in GL thread
+    private Bitmap mRiffleBitmap;
+
+    /**
+     * Measured texts of page
+     */
+    private final static class PageText {
+        String text;
+        float textWidth;
+        String hint;
+        float hintWidth;
+    }
 
     public PageRender(Context context, PageFlip pageFlip,
                       Handler handler, int pageNo) {
@@ -55,9 +97,36 @@ public abstract class PageRender implements OnPageFlipListener {
         mPageFlip = pageFlip;
         mPageNo = pageNo;
         mDrawCommand = DRAW_FULL_PAGE;
-        mCanvas = new Canvas();
         mPageFlip.setListener(this);
+        mPageFlip.setOnPageFlipEndedListener(this);
         mHandler = handler;
+        mComposer = new PageComposer(context, this, handler);
+        mPlaceholder = Bitmap.createBitmap(PLACEHOLDER_SIZE, PLACEHOLDER_SIZE,
+                                           PageComposer.CONFIG);
+        mPlaceholder.eraseColor(Color.CYAN);
+        mDrawnStages = new SparseIntArray();
+
+        mTextPaint = newTextPaint(calcFontSize(80));
+        mHintPaint = newTextPaint(calcFontSize(16));
+        mPageTexts = new SparseArray<>();
+        mRiffleBitmap = Bitmap.createBitmap(PLACEHOLDER_SIZE, PLACEHOLDER_SIZE,
+                                            PageComposer.CONFIG);
+    }
+
+    /**
+     * Create paint for drawing text on page
+     *
+     * @param fontSize font size in pixel
+     * @return paint object
+     */
+    private static Paint newTextPaint(int fontSize) {
+        Paint p = new Paint();
+        p.setColor(Color.WHITE);
+        p.setStrokeWidth(1);
+        p.setAntiAlias(true);
+        p.setShadowLayer(5.0f, 8.0f, 8.0f, Color.BLACK);
+        p.setTextSize(fontSize);
+        return p;
     }
 
     /**
@@ -73,14 +142,19 @@ public abstract class PageRender implements OnPageFlipListener {
      * Release resources
      */
     public void release() {
-        if (mBitmap != null) {
-            mBitmap.recycle();
-            mBitmap = null;
+        mComposer.release();
+        if (mPlaceholder != null) {
+            mPlaceholder.recycle();
+            mPlaceholder = null;
+        }
+
+        if (mRiffleBitmap != null) {
+            mRiffleBitmap.recycle();
+            mRiffleBitmap = null;
         }
 
         mPageFlip.setListener(null);
-        mCanvas = null;
-        mBackgroundBitmap = null;
+        mPageFlip.setOnPageFlipEndedListener(null);
     }
 
     /**
@@ -103,7 +177,8 @@ public abstract class PageRender implements OnPageFlipListener {
      * @return true if event is handled
      */
     public boolean onFingerUp(float x, float y) {
-        if (mPageFlip.animating()) {
+        // animation is stepped in GL thread when drawing frame
+        if (mPageFlip.isAnimating()) {
             mDrawCommand = DRAW_ANIMATING_FRAME;
             return true;
         }
@@ -111,6 +186,57 @@ public abstract class PageRender implements OnPageFlipListener {
         return false;
     }
 
+    /**
+     * Riffle to given page
+     *
+     * @param pageNo target page number
+     * @param duration millisecond for the whole riffle
+     * @return true if riffle is started
+     */
+    public boolean riffleTo(int pageNo, int duration) {
+        if (mPageFlip.startRiffle(getRiffleCount(pageNo), duration)) {
+            mDrawCommand = DRAW_ANIMATING_FRAME;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Is render drawing animating frames?
+     * <p>Called in GL thread after drawing a frame to request the next one
+     * </p>
+     *
+     * @return true if next frame is needed for animating
+     */
+    public boolean isAnimating() {
+        return mDrawCommand == DRAW_ANIMATING_FRAME;
+    }
+
+    /**
+     * Step flip animation before drawing an animating frame
+     * <p>Called in GL thread, if animation is ended,
+     * {@link #onPageFlipEnded(PageFlipState)} is called to update textures
+     * and page number, then draw command is changed to draw full page</p>
+     *
+     * @param frameTimeNanos presentation time of frame, see
+     *                       {@link PageFlip#animating(long)}
+     */
+    void stepAnimation(long frameTimeNanos) {
+        if (mDrawCommand != DRAW_ANIMATING_FRAME) {
+            return;
+        }
+
+        // if animation is ended, the end listener is called inside
+        // animating() and resets draw command to DRAW_FULL_PAGE, but a queued
+        // flip may be started right after it, keep drawing animating frames
+        // for the new flip
+        boolean running = mPageFlip.animating(frameTimeNanos);
+        if (running) {
+            mDrawCommand = DRAW_ANIMATING_FRAME;
+        }
+    }
+
     /**
      * Calculate font size by given SP unit
      */
@@ -119,10 +245,167 @@ public abstract class PageRender implements OnPageFlipListener {
                                     .scaledDensity);
     }
 
+    /**
+     * Draw page number and hint at the bottom of page
+     * <p>Texts are measured once and cached by page number. Called in
+     * composer thread</p>
+     *
+     * @param canvas canvas of composed bitmap
+     * @param number page number
+     * @param width page width
+     * @param height page height
+     */
+    void drawPageText(Canvas canvas, int number, int width, int height) {
+        PageText pt = mPageTexts.get(number);
+        if (pt == null) {
+            pt = new PageText();
+            pt.text = getPageText(number);
+            pt.textWidth = mTextPaint.measureText(pt.text);
+            pt.hint = getPageHint(number);
+            if (pt.hint != null) {
+                pt.hintWidth = mHintPaint.measureText(pt.hint);
+            }
+            mPageTexts.put(number, pt);
+        }
+
+        float y = height - mTextPaint.getTextSize() - 20;
+        canvas.drawText(pt.text, (width - pt.textWidth) / 2, y, mTextPaint);
+        if (pt.hint != null) {
+            canvas.drawText(pt.hint, (width - pt.hintWidth) / 2,
+                            y + 5 + mHintPaint.getTextSize(), mHintPaint);
+        }
+    }
+
+    /**
+     * Update texture of page with composed page content
+     * <p>Texture is only updated when it is not set or a better content is
+     * composed. If page is still being composed, the placeholder will be set
+     * to first or second texture and back texture is kept unset, that means
+     * it is same with the first texture. Called in GL thread</p>
+     *
+     * @param page page object
+     * @param which which texture: FIRST_TEXTURE, SECOND_TEXTURE or
+     *              BACK_TEXTURE
+     * @param number page number of texture content
+     */
+    void updateTexture(Page page, int which, int number) {
+        // pages are flipped too fast to be composed while riffling
+        if (mPageFlip.isRiffling()) {
+            updateRiffleTexture(page, which, number);
+            return;
+        }
+
+        boolean isSet;
+        boolean isLoading;
+        if (which == FIRST_TEXTURE) {
+            isSet = page.isFirstTextureSet();
+            isLoading = page.isFirstBitmapLoading();
+        }
+        else if (which == SECOND_TEXTURE) {
+            isSet = page.isSecondTextureSet();
+            isLoading = page.isSecondaryBitmapLoading();
+        }
+        else {
+            isSet = page.isBackTextureSet();
+            isLoading = mDrawnStages.get(number, PageComposer.STAGE_NONE) !=
+                        PageComposer.STAGE_FULL;
+        }
+
+        if (isSet && !isLoading) {
+            return;
+        }
+
+        final int drawn = isSet ? mDrawnStages.get(number,
+                                                   PageComposer.STAGE_NONE)
+                                : PageComposer.STAGE_NONE;
+        PageComposer.Result r = mComposer.take(number, drawn);
+        if (r != null) {
+            setTexture(page, which, r.bitmap,
+                       r.stage != PageComposer.STAGE_FULL);
+            mDrawnStages.put(number, r.stage);
+            mComposer.recycle(r);
+        }
+        else if (!isSet && which != BACK_TEXTURE) {
+            setTexture(page, which, mPlaceholder, true);
+            mDrawnStages.put(number, PageComposer.STAGE_NONE);
+        }
+    }
+
+    /**
+     * Update texture of page with a riffle preview
+     * <p>Preview is a tiny solid color bitmap, GL thread only fills and
+     * uploads it without drawing texts, page number is drawn on the composed
+     * page. It is marked as loading and will be replaced by any composed
+     * content. Back texture is kept unset while riffling</p>
+     *
+     * @param page page object
+     * @param which which texture: FIRST_TEXTURE, SECOND_TEXTURE or
+     *              BACK_TEXTURE
+     * @param number page number of texture content
+     */
+    private void updateRiffleTexture(Page page, int which, int number) {
+        if (which == BACK_TEXTURE ||
+            (which == FIRST_TEXTURE && page.isFirstTextureSet()) ||
+            (which == SECOND_TEXTURE && page.isSecondTextureSet())) {
+            return;
+        }
+
+        mRiffleBitmap.eraseColor(RIFFLE_COLORS[Math.abs(number) %
+                                               RIFFLE_COLORS.length]);
+
+        // any composed content is better than riffle preview
+        setTexture(page, which, mRiffleBitmap, true);
+        mDrawnStages.put(number, PageComposer.STAGE_EMPTY);
+    }
+
+    /**
+     * Set texture of page with given bitmap
+     */
+    private void setTexture(Page page, int which, Bitmap b, boolean loading) {
+        if (which == FIRST_TEXTURE) {
+            page.setFirstTexture(b, loading);
+        }
+        else if (which == SECOND_TEXTURE) {
+            page.setSecondTexture(b, loading);
+        }
+        else {
+            page.setBackTexture(b);
+        }
+    }
+
+    /**
+     * Draw page foreground on composed page content
+     * <p>Background is already drawn on canvas before calling it. Remember
+     * it will be called in worker thread of {@link PageComposer}</p>
+     *
+     * @param canvas canvas of composed bitmap
+     * @param number page number
+     */
+    public abstract void composePage(Canvas canvas, int number);
+
+    /**
+     * Get page number text
+     *
+     * @param number page number
+     * @return text drawn as page number
+     */
+    abstract String getPageText(int number);
+
+    /**
+     * Get hint text drawn below page number
+     *
+     * @param number page number
+     * @return hint text or null if there is no hint
+     */
+    abstract String getPageHint(int number);
+
     /**
      * Render page frame
+     *
+     * @param frameTimeNanos presentation time of frame, animation is stepped
+     *                       to it
      */
-    abstract void onDrawFrame();
+    abstract void onDrawFrame(long frameTimeNanos);
 
     /**
      * Handle surface changing event
@@ -133,10 +416,20 @@ public abstract class PageRender implements OnPageFlipListener {
     abstract void onSurfaceChanged(int width, int height);
 
     /**
-     * Handle drawing ended event
+     * Get count of flips from current page to the given page
+     *
+     * @param pageNo target page number
+     * @return flip count, positive value is for forward and negative value is
+     *         for backward
+     */
+    abstract int getRiffleCount(int pageNo);
+
+    /**
+     * Handle the end of flip animation
+     * <p>Called in GL thread when animation is stepped in
+     * {@link #stepAnimation(long)}</p>
      *
-     * @param what draw command
-     * @return true if render is needed
+     * @param state end state of page flip
      */
-    abstract boolean onEndedDrawing(int what);
+    public abstract void onPageFlipEnded(PageFlipState state);
 }
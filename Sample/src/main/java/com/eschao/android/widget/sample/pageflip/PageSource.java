@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import android.graphics.Bitmap;
+
+/**
+ * Source of page bitmaps
+ *
+ * @author eschao
+ */
+public interface PageSource {
+
+    /**
+     * Get page count
+     *
+     * @return page count
+     */
+    int getPageCount();
+
+    /**
+     * Get bitmap of given page
+     * <p>The width and height are target size of page, the returned bitmap
+     * could be larger than it but should not be less if possible</p>
+     *
+     * @param number page number, is in [0 .. page count)
+     * @param width target width
+     * @param height target height
+     * @return bitmap of page or null if failed to load
+     */
+    Bitmap getPage(int number, int width, int height);
+}
@@ -22,15 +22,20 @@ import android.content.SharedPreferences.Editor;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.util.Log;
 import android.view.GestureDetector;
 import android.view.GestureDetector.OnGestureListener;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.MotionEvent;
+import android.view.VelocityTracker;
 import android.view.View;
 import android.view.WindowManager;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Sample Activity
  *
@@ -38,8 +43,12 @@ import android.view.WindowManager;
  */
 public class SampleActivity extends Activity implements OnGestureListener {
 
+    private final static String TAG = "SampleActivity";
+
     PageFlipView mPageFlipView;
     GestureDetector mGestureDetector;
+    VelocityTracker mVelocityTracker;
+    PagePackReader mPagePack;
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -48,6 +57,7 @@ public class SampleActivity extends Activity implements OnGestureListener {
         mPageFlipView = new PageFlipView(this);
         setContentView(mPageFlipView);
         mGestureDetector = new GestureDetector(this, this);
+        openPagePack();
 
         if (Build.VERSION.SDK_INT < 16) {
             getWindow().setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN,
@@ -78,6 +88,50 @@ public class SampleActivity extends Activity implements OnGestureListener {
         LoadBitmapTask.get(this).stop();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+
+        if (mPagePack != null) {
+            LoadBitmapTask.get(this).setPageSource(null);
+            try {
+                mPagePack.close();
+            }
+            catch (IOException e) {
+                Log.w(TAG, "Failed to close page pack", e);
+            }
+            mPagePack = null;
+        }
+    }
+
+    /**
+     * Open page pack and load pages from it if it exists
+     * <p>Build it by {@link PagePackWriter} and push it to app external
+     * files directory, for example:
+     * {@code adb push pages.ppk /sdcard/Android/data/<package>/files/}</p>
+     */
+    private void openPagePack() {
+        File dir = getExternalFilesDir(null);
+        if (dir == null) {
+            return;
+        }
+
+        File file = new File(dir, Constants.PAGE_PACK_FILE);
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            mPagePack = new PagePackReader(file);
+            LoadBitmapTask.get(this).setPageSource(mPagePack);
+            Log.d(TAG, "Load " + mPagePack.getPageCount() +
+                       " pages from " + file);
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Can't open page pack: " + file, e);
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         MenuInflater inflater = getMenuInflater();
@@ -101,6 +155,9 @@ public class SampleActivity extends Activity implements OnGestureListener {
             menu.findItem(R.id.single_page).setChecked(true);
         }
 
+        menu.findItem(R.id.overdraw)
+            .setChecked(mPageFlipView.isOverdrawCounterEnabled());
+
         SharedPreferences pref = PreferenceManager
                                     .getDefaultSharedPreferences(this);
         int pixels = pref.getInt("MeshPixels", mPageFlipView.getPixelsOfMesh());
@@ -163,6 +220,16 @@ public class SampleActivity extends Activity implements OnGestureListener {
             case R.id.mesh_20p:
                 editor.putInt(Constants.PREF_MESH_PIXELS, 20);
                 break;
+            case R.id.riffle_first:
+                mPageFlipView.riffleTo(0);
+                return true;
+            case R.id.riffle_last:
+                mPageFlipView.riffleTo(PageRender.MAX_PAGES);
+                return true;
+            case R.id.overdraw:
+                item.setChecked(!item.isChecked());
+                mPageFlipView.enableOverdrawCounter(item.isChecked());
+                return true;
             case R.id.about_menu:
                 showAbout();
                 return true;
@@ -181,8 +248,31 @@ public class SampleActivity extends Activity implements OnGestureListener {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        // track finger velocity for flinging page
+        if (event.getAction() == MotionEvent.ACTION_DOWN) {
+            if (mVelocityTracker == null) {
+                mVelocityTracker = VelocityTracker.obtain();
+            }
+            else {
+                mVelocityTracker.clear();
+            }
+        }
+        if (mVelocityTracker != null) {
+            mVelocityTracker.addMovement(event);
+        }
+
         if (event.getAction() == MotionEvent.ACTION_UP) {
-            mPageFlipView.onFingerUp(event.getX(), event.getY());
+            float vx = 0;
+            float vy = 0;
+            if (mVelocityTracker != null) {
+                mVelocityTracker.computeCurrentVelocity(1000);
+                vx = mVelocityTracker.getXVelocity();
+                vy = mVelocityTracker.getYVelocity();
+                mVelocityTracker.recycle();
+                mVelocityTracker = null;
+            }
+
+            mPageFlipView.onFingerUp(event.getX(), event.getY(), vx, vy);
             return true;
         }
 
@@ -191,7 +281,7 @@ public class SampleActivity extends Activity implements OnGestureListener {
 
     @Override
     public boolean onDown(MotionEvent e) {
-        mPageFlipView.onFingerDown(e.getX(), e.getY());
+        mPageFlipView.onFingerDown(e.getX(), e.getY(), getEventTimeNanos(e));
         return true;
     }
 
@@ -209,7 +299,8 @@ public class SampleActivity extends Activity implements OnGestureListener {
     @Override
     public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
                             float distanceY) {
-        mPageFlipView.onFingerMove(e2.getX(), e2.getY());
+        mPageFlipView.onFingerMove(e2.getX(), e2.getY(),
+                                   getEventTimeNanos(e2));
         return true;
     }
 
@@ -221,6 +312,18 @@ public class SampleActivity extends Activity implements OnGestureListener {
         return false;
     }
 
+    /**
+     * Get event time in nanoseconds
+     * <p>Event time is in uptime milliseconds, uptime and System.nanoTime()
+     * are both based on monotonic clock on Android</p>
+     *
+     * @param e motion event
+     * @return event time in nanoseconds
+     */
+    private static long getEventTimeNanos(MotionEvent e) {
+        return e.getEventTime() * 1000000L;
+    }
+
     private void showAbout() {
         View aboutView = getLayoutInflater().inflate(R.layout.about, null,
                                                      false);
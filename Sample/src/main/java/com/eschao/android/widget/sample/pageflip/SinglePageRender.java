@@ -16,12 +16,8 @@
 package com.eschao.android.widget.sample.pageflip;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.Paint;
-import android.graphics.Rect;
+import android.graphics.Canvas;
 import android.os.Handler;
-import android.os.Message;
 import android.util.Log;
 
 import com.eschao.android.widget.pageflip.Page;
@@ -46,6 +42,8 @@ import com.eschao.android.widget.pageflip.PageFlipState;
 public class SinglePageRender extends PageRender {
 
     private final PageFlipView mPageFlipView;
+    // is page content rotated on texture for landscape page
+    private volatile boolean mIsLandscape;
 
     /**
      * Constructor
@@ -62,14 +60,20 @@ public class SinglePageRender extends PageRender {
 
     /**
      * Draw frame
+     *
+     * @param frameTimeNanos presentation time of frame
      */
-    public void onDrawFrame() {
+    public void onDrawFrame(long frameTimeNanos) {
         Log.d("Default", "onDrawFrame");
         // 1. delete unused textures
         mPageFlip.deleteUnusedTextures();
         Page page = mPageFlip.getFirstPage();
 
-        // 2. handle drawing command triggered from finger moving and animating
+        // 2. step animation in GL thread, if it is ended, page number and
+        // textures are updated and full page will be drawn
+        stepAnimation(frameTimeNanos);
+
+        // 3. handle drawing command triggered from finger moving and animating
         if (mDrawCommand == DRAW_MOVING_FRAME ||
                 mDrawCommand == DRAW_ANIMATING_FRAME) {
             // is forward flip
@@ -78,17 +82,9 @@ public class SinglePageRender extends PageRender {
 //                // create new one
 //            }
             if (mPageFlip.getFlipState() == PageFlipState.FORWARD_FLIP) {
-                if (!page.isSecondTextureSet() || (page.isSecondaryBitmapLoading() && LoadBitmapTask.get(mContext).getBitmap(mPageNo + 1) != null)) {
-                    Log.d("Default", "SETTING A");
-                    boolean loadingBitmap = drawPage(mPageNo + 1);
-                    page.setSecondTexture(mBitmap, loadingBitmap);
-                }
+                updateTexture(page, SECOND_TEXTURE, mPageNo + 1);
             } else if (mPageFlip.getFlipState() == PageFlipState.BACKWARD_FLIP) {
-                if (!page.isFirstTextureSet()|| (page.isFirstBitmapLoading() && LoadBitmapTask.get(mContext).getBitmap(mPageNo - 1) != null)) {
-                    Log.d("Default", "SETTING B");
-                    boolean loadingBitmap = drawPage(mPageNo - 1);
-                    page.setFirstTexture(mBitmap, loadingBitmap);
-                }
+                updateTexture(page, FIRST_TEXTURE, mPageNo - 1);
             }
 
             // draw frame for page flip
@@ -96,23 +92,10 @@ public class SinglePageRender extends PageRender {
         }
         // draw stationary page without flipping
         else if (mDrawCommand == DRAW_FULL_PAGE) {
-            if (!page.isFirstTextureSet() || (page.isFirstTextureSet() && LoadBitmapTask.get(mContext).getBitmap(mPageNo) != null)) {
-                Log.d("Default", "SETTING C");
-                boolean loadingBitmap = drawPage(mPageNo);
-                page.setFirstTexture(mBitmap, loadingBitmap);
-            }
+            updateTexture(page, FIRST_TEXTURE, mPageNo);
 
             mPageFlip.drawPageFrame();
         }
-
-        // 3. send message to main thread to notify drawing is ended so that
-        // we can continue to calculate next animation frame if need.
-        // Remember: the drawing operation is always in GL thread instead of
-        // main thread
-        Message msg = Message.obtain();
-        msg.what = MSG_ENDED_DRAWING_FRAME;
-        msg.arg1 = mDrawCommand;
-        mHandler.sendMessage(msg);
     }
 
     /**
@@ -122,67 +105,53 @@ public class SinglePageRender extends PageRender {
      * @param height surface height
      */
     public void onSurfaceChanged(int width, int height) {
-        // recycleRest bitmap resources if need
-        if (mBackgroundBitmap != null) {
-            mBackgroundBitmap.recycle();
-        }
-
-        if (mBitmap != null) {
-            mBitmap.recycle();
-        }
-
-        // create bitmap and canvas for page
-        //mBackgroundBitmap = background;
+        // set size of composed page
+        // in landscape, page content is drawn on a portrait bitmap and rotated
+        // by texture coordinates instead of copying a rotated bitmap, pages
+        // are composed with upload size so GL thread never scales them
         Page page = mPageFlip.getFirstPage();
-        mBitmap = Bitmap.createBitmap((int) page.width(), (int) page.height(),
-                Bitmap.Config.ARGB_8888);
-        mCanvas.setBitmap(mBitmap);
+        mIsLandscape = page.width() > page.height();
+        page.setTextureRotated(mIsLandscape);
+        page.setTextureFormat(Page.TEXTURE_FORMAT_RGB_565);
+        mComposer.setSize(page.getTextureUploadWidth(),
+                          page.getTextureUploadHeight());
         LoadBitmapTask.get(mContext).set(width, height, 1);
     }
 
     /**
-     * Handle ended drawing event
-     * In here, we only tackle the animation drawing event, If we need to
-     * continue requesting render, please return true. Remember this function
-     * will be called in main thread
+     * Handle the end of flip animation
+     * <p>Called in GL thread before drawing frame, update page number and
+     * switch textures, then draw the full page</p>
      *
-     * @param what event type
-     * @return ture if need render again
+     * @param state end state of page flip
      */
-    public boolean onEndedDrawing(int what) {
-        if (what == DRAW_ANIMATING_FRAME) {
-            boolean isAnimating = mPageFlip.animating();
-            // continue animating
-            if (isAnimating) {
-                mDrawCommand = DRAW_ANIMATING_FRAME;
-                return true;
-            }
-            // animation is finished
-            else {
-                final PageFlipState state = mPageFlip.getFlipState();
-                // update page number for backward flip
-                if (state == PageFlipState.END_WITH_BACKWARD) {
-                    // don't do anything on page number since mPageNo is always
-                    // represents the FIRST_TEXTURE no;
-                    // mPageFlip.getFirstPage().setSecondTextureWithFirst();
-                    mPageNo--;
-                    onPageNoChanged(mPageNo);
-                }
-                // update page number and switch textures for forward flip
-                else if (state == PageFlipState.END_WITH_FORWARD) {
-                    mPageFlip.getFirstPage().setFirstTextureWithSecond();
-                    mPageNo++;
-                    onPageNoChanged(mPageNo);
-                }
-
-                mDrawCommand = DRAW_FULL_PAGE;
-                return true;
-            }
+    public void onPageFlipEnded(PageFlipState state) {
+        // update page number for backward flip
+        if (state == PageFlipState.END_WITH_BACKWARD) {
+            // don't do anything on page number since mPageNo is always
+            // represents the FIRST_TEXTURE no;
+            // mPageFlip.getFirstPage().setSecondTextureWithFirst();
+            mPageNo--;
+            onPageNoChanged(mPageNo);
+        }
+        // update page number and switch textures for forward flip
+        else if (state == PageFlipState.END_WITH_FORWARD) {
+            mPageFlip.getFirstPage().setFirstTextureWithSecond();
+            mPageNo++;
+            onPageNoChanged(mPageNo);
         }
-        return false;
+
+        mDrawCommand = DRAW_FULL_PAGE;
     }
 
     private void onPageNoChanged(int pageNo) {
+        mComposer.retain(pageNo - 1, pageNo + 1);
+
+        // don't load pages which are skipped by riffle
+        if (mPageFlip.isRiffling()) {
+            return;
+        }
+
         LoadBitmapTask.get(mContext).loadBitmaps(pageNo, new Runnable() {
             @Override public void run() {
                 Log.d("Default", "ON BITMAP LOADED");
@@ -197,58 +166,43 @@ public class SinglePageRender extends PageRender {
     }
 
     /**
-     * Draw page content
+     * Draw page number on composed page content
      *
+     * @param canvas canvas of composed bitmap
      * @param number page number
      */
-    private boolean drawPage(int number) {
-        Log.d("Default", "drawPage=" + number);
-        final int width = mCanvas.getWidth();
-        final int height = mCanvas.getHeight();
-        Paint p = new Paint();
-        p.setFilterBitmap(true);
-
-        boolean isLoadingBitmap = false;
-
-        // 1. draw background bitmap
-        Bitmap background = LoadBitmapTask.get(mContext).getBitmap(number);
-        if(background != null) {
-            Log.d("Default", "HIT");
-            Rect rect = new Rect(0, 0, width, height);
-            mCanvas.drawBitmap(background, null, rect, p);
-            isLoadingBitmap = false;
-        } else {
-            Log.d("Default", "MISS");
-            mCanvas.drawColor(Color.CYAN);
-            isLoadingBitmap = true;
+    public void composePage(Canvas canvas, int number) {
+        // texture will be rotated 90 degree clockwise in landscape, rotate
+        // canvas inversely to keep text upright on screen
+        if (mIsLandscape) {
+            canvas.save();
+            canvas.translate(0, canvas.getHeight());
+            canvas.rotate(-90);
+            drawPageText(canvas, number, canvas.getHeight(), canvas.getWidth());
+            canvas.restore();
         }
+        else {
+            drawPageText(canvas, number, canvas.getWidth(), canvas.getHeight());
+        }
+    }
+
+    String getPageText(int number) {
+        return String.valueOf(number);
+    }
 
-        // 2. draw page number
-        int fontSize = calcFontSize(80);
-        p.setColor(Color.WHITE);
-        p.setStrokeWidth(1);
-        p.setAntiAlias(true);
-        p.setShadowLayer(5.0f, 8.0f, 8.0f, Color.BLACK);
-        p.setTextSize(fontSize);
-        String text = String.valueOf(number);
-        float textWidth = p.measureText(text);
-        float y = height - p.getTextSize() - 20;
-        mCanvas.drawText(text, (width - textWidth) / 2, y, p);
+    int getRiffleCount(int pageNo) {
+        pageNo = Math.max(0, Math.min(MAX_PAGES - 1, pageNo));
+        return pageNo - mPageNo;
+    }
 
+    String getPageHint(int number) {
         if (number <= 1) {
-            String firstPage = "The First Page";
-            p.setTextSize(calcFontSize(16));
-            float w = p.measureText(firstPage);
-            float h = p.getTextSize();
-            mCanvas.drawText(firstPage, (width - w) / 2, y + 5 + h, p);
-        } else if (number >= MAX_PAGES) {
-            String lastPage = "The Last Page";
-            p.setTextSize(calcFontSize(16));
-            float w = p.measureText(lastPage);
-            float h = p.getTextSize();
-            mCanvas.drawText(lastPage, (width - w) / 2, y + 5 + h, p);
+            return "The First Page";
+        }
+        else if (number >= MAX_PAGES) {
+            return "The Last Page";
         }
-        return isLoadingBitmap;
+        return null;
     }
 
     /**
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2016 eschao <esc.chao@gmail.com>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eschao.android.widget.sample.pageflip;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests and random access benchmark of {@link PagePackReader}
+ * <p>Packs are built by {@link PagePackWriter}, only page buffers are read
+ * so that no Android API is needed</p>
+ *
+ * @author eschao
+ */
+public class PagePackReaderTest {
+
+    private final static int WIDTH = 128;
+    private final static int HEIGHT = 128;
+    private final static int PAGES = 256;
+    private final static int BENCHMARK_READS = 20000;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("pages", ".ppk");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void readRawPages() throws IOException {
+        writeRawPack(PagePack.FORMAT_RGB_565, 3);
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            assertEquals(3, reader.getPageCount());
+            assertEquals(WIDTH, reader.getWidth());
+            assertEquals(HEIGHT, reader.getHeight());
+            for (int i = 0; i < 3; ++i) {
+                ByteBuffer buf = reader.getPageBuffer(i);
+                assertEquals(WIDTH * HEIGHT * 2, buf.remaining());
+                assertPage(i, buf);
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readEncodedPagesWithVariedLength() throws IOException {
+        PagePackWriter writer = new PagePackWriter(mFile,
+                                                   PagePack.FORMAT_ENCODED,
+                                                   WIDTH, HEIGHT, 3);
+        for (int i = 0; i < 3; ++i) {
+            writer.addPage(pageOf(i, 10 + i * 7));
+        }
+        writer.close();
+
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            for (int i = 0; i < 3; ++i) {
+                ByteBuffer buf = reader.getPageBuffer(i);
+                assertEquals(10 + i * 7, buf.remaining());
+                assertPage(i, buf);
+            }
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void readEtc1Pages() throws IOException {
+        final int stride = PagePack.strideOf(PagePack.FORMAT_ETC1, 30, 18);
+        assertEquals(8 * 5 * 8, stride);
+
+        byte[] pkm = new byte[16 + stride];
+        pkm[0] = 'P';
+        pkm[1] = 'K';
+        pkm[2] = 'M';
+        pkm[3] = ' ';
+        byte[] raw = PagePackWriter.stripPkmHeader(pkm);
+        assertEquals(stride, raw.length);
+
+        PagePackWriter writer = new PagePackWriter(mFile, PagePack.FORMAT_ETC1,
+                                                   30, 18, 1);
+        writer.addPage(raw);
+        writer.close();
+
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            assertEquals(stride, reader.getPageBuffer(0).remaining());
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectTruncatedPack() throws IOException {
+        writeRawPack(PagePack.FORMAT_ARGB_8888, 4);
+        truncate(mFile.length() - 100);
+
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            assertPage(2, reader.getPageBuffer(2));
+            reader.getPageBuffer(3);
+            fail("Truncated page is read");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("out of file"));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectTruncatedIndex() throws IOException {
+        writeRawPack(PagePack.FORMAT_ARGB_8888, 4);
+        truncate(PagePack.indexOffsetOf(2));
+        try {
+            new PagePackReader(mFile).close();
+            fail("Truncated index is accepted");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("Truncated page index"));
+        }
+    }
+
+    @Test
+    public void rejectCorruptedOffset() throws IOException {
+        writeRawPack(PagePack.FORMAT_ARGB_8888, 2);
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(PagePack.indexOffsetOf(1));
+        raf.writeLong(1L << 40);
+        raf.seek(PagePack.indexOffsetOf(0));
+        raf.writeLong(0);
+        raf.close();
+
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            assertRejected(reader, 0, "out of file");
+            assertRejected(reader, 1, "out of file");
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectRawLengthUnmatchedStride() throws IOException {
+        writeRawPack(PagePack.FORMAT_ARGB_8888, 2);
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(PagePack.indexOffsetOf(0) + 8);
+        raf.writeInt(16);
+        raf.close();
+
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            assertRejected(reader, 0, "expected " + WIDTH * HEIGHT * 4);
+            assertPage(1, reader.getPageBuffer(1));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rejectCorruptedHeader() throws IOException {
+        writeRawPack(PagePack.FORMAT_ARGB_8888, 1);
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(24);
+        raf.writeInt(12345);
+        raf.close();
+        assertInvalid("Stride");
+
+        raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(8);
+        raf.writeInt(99);
+        raf.close();
+        assertInvalid("Unknown format");
+
+        raf = new RandomAccessFile(mFile, "rw");
+        raf.seek(16);
+        raf.writeInt(-1);
+        raf.close();
+        assertInvalid("Invalid page size");
+    }
+
+    /**
+     * Benchmark of random access read throughput
+     * <p>Every read gets a page by index and copies all its bytes out</p>
+     */
+    @Test
+    public void randomAccessReadThroughput() throws IOException {
+        writeRawPack(PagePack.FORMAT_ARGB_8888, PAGES);
+        final int stride = WIDTH * HEIGHT * 4;
+        byte[] out = new byte[stride];
+        Random random = new Random(17);
+
+        PagePackReader reader = new PagePackReader(mFile);
+        try {
+            // warm up page cache and JIT
+            for (int i = 0; i < PAGES; ++i) {
+                reader.getPageBuffer(i).get(out);
+            }
+
+            final long start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_READS; ++i) {
+                final int number = random.nextInt(PAGES);
+                ByteBuffer buf = reader.getPageBuffer(number);
+                buf.get(out);
+                assertEquals((byte)number, out[0]);
+                assertEquals((byte)number, out[stride - 1]);
+            }
+            final long nanos = System.nanoTime() - start;
+
+            final double mb = (double)stride * BENCHMARK_READS / (1 << 20);
+            System.out.println(String.format(
+                    "PagePack random access: %d reads of %dKB pages in %.1fms" +
+                    ", %.0f pages/s, %.0f MB/s",
+                    BENCHMARK_READS, stride >> 10, nanos / 1e6,
+                    BENCHMARK_READS * 1e9 / nanos, mb * 1e9 / nanos));
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    private void writeRawPack(int format, int count) throws IOException {
+        final int stride = PagePack.strideOf(format, WIDTH, HEIGHT);
+        PagePackWriter writer = new PagePackWriter(mFile, format,
+                                                   WIDTH, HEIGHT, count);
+        for (int i = 0; i < count; ++i) {
+            writer.addPage(pageOf(i, stride));
+        }
+        writer.close();
+    }
+
+    private void truncate(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        raf.setLength(length);
+        raf.close();
+    }
+
+    private void assertInvalid(String message) {
+        try {
+            new PagePackReader(mFile).close();
+            fail("Corrupted header is accepted");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static void assertRejected(PagePackReader reader, int number,
+                                       String message) {
+        try {
+            reader.getPageBuffer(number);
+            fail("Corrupted page " + number + " is read");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    private static byte[] pageOf(int number, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte)number;
+        }
+        return data;
+    }
+
+    private static void assertPage(int number, ByteBuffer buf) {
+        while (buf.hasRemaining()) {
+            assertEquals((byte)number, buf.get());
+        }
+    }
+}